@@ -0,0 +1,168 @@
+package me.ansuz.amrv.files.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small harness that measures the average time of an operation.
+ *
+ * <p>
+ * Every benchmark runs some warmup iterations that are discarded and then the
+ * measured iterations, each iteration calls the operation in a loop for a fixed
+ * time. The results are written as JSON with the same fields JMH uses, so the
+ * same tools can be used to compare them.
+ * 
+ * @author Ansuz
+ *
+ */
+public final class Benchmark {
+
+	/**
+	 * A single call of the measured operation
+	 */
+	public interface Operation {
+		/**
+		 * @return any value derived from the work done, so it is not optimized away
+		 */
+		Object run() throws Exception;
+	}
+
+	/**
+	 * The result of a benchmark
+	 */
+	public static final class Result {
+		final String name;
+		final Map<String, String> params;
+		final double[] samples;
+		final double score;
+		final double error;
+
+		Result(String name, Map<String, String> params, double[] samples) {
+			this.name = name;
+			this.params = params;
+			this.samples = samples;
+			double sum = 0;
+			for (double sample : samples)
+				sum += sample;
+			this.score = sum / samples.length;
+			double variance = 0;
+			for (double sample : samples)
+				variance += (sample - score) * (sample - score);
+			// Approximation of the 99.9% confidence interval used by JMH
+			this.error = samples.length > 1 ? 3.29 * Math.sqrt(variance / (samples.length - 1) / samples.length)
+					: Double.NaN;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-40s %-30s %14.1f +- %10.1f ns/op", name, params, score, error);
+		}
+	}
+
+	private final int warmups;
+	private final int iterations;
+	private final long time;
+	private final List<Result> results = new ArrayList<>();
+	// Receives the values of the operations so the work is never discarded
+	private volatile int sink;
+
+	/**
+	 * @param warmups    amount of iterations that are not measured
+	 * @param iterations amount of measured iterations
+	 * @param time       of each iteration in milliseconds
+	 */
+	public Benchmark(int warmups, int iterations, long time) {
+		this.warmups = warmups;
+		this.iterations = iterations;
+		this.time = TimeUnit.MILLISECONDS.toNanos(time);
+	}
+
+	/**
+	 * Measures an operation and stores its result
+	 *
+	 * @param name      of the benchmark
+	 * @param params    that identify this run of the benchmark, like the file size
+	 * @param operation to be measured
+	 *
+	 * @return the result
+	 *
+	 * @throws Exception if the operation fails
+	 */
+	public Result run(String name, Map<String, String> params, Operation operation) throws Exception {
+		for (int i = 0; i < warmups; i++)
+			this.iteration(operation);
+		final double[] samples = new double[iterations];
+		for (int i = 0; i < iterations; i++)
+			samples[i] = this.iteration(operation);
+		final Result result = new Result(name, new LinkedHashMap<>(params), samples);
+		results.add(result);
+		System.out.println(result);
+		return result;
+	}
+
+	/**
+	 * @return the average nanoseconds of every call during the iteration
+	 */
+	private double iteration(Operation operation) throws Exception {
+		int hash = 0;
+		long calls = 0;
+		final long start = System.nanoTime();
+		long elapsed;
+		do {
+			final Object value = operation.run();
+			hash += value == null ? 0 : value.hashCode();
+			calls++;
+		} while ((elapsed = System.nanoTime() - start) < time);
+		sink += hash;
+		return (double) elapsed / calls;
+	}
+
+	/**
+	 * @return every result measured
+	 */
+	public List<Result> getResults() {
+		return results;
+	}
+
+	/**
+	 * Writes every result as a JSON array
+	 *
+	 * @param writer to write the results to
+	 *
+	 * @throws IOException if the writer fails
+	 */
+	public void writeJson(Writer writer) throws IOException {
+		writer.write("[\n");
+		for (int r = 0; r < results.size(); r++) {
+			final Result result = results.get(r);
+			writer.write("  {\n    \"benchmark\": " + quote(result.name) + ",\n    \"mode\": \"avgt\",\n");
+			writer.write("    \"warmupIterations\": " + warmups + ",\n    \"measurementIterations\": " + iterations
+					+ ",\n    \"measurementTime\": \"" + TimeUnit.NANOSECONDS.toMillis(time) + " ms\",\n");
+			writer.write("    \"params\": {");
+			int p = 0;
+			for (Map.Entry<String, String> param : result.params.entrySet())
+				writer.write((p++ > 0 ? ", " : " ") + quote(param.getKey()) + ": " + quote(param.getValue()));
+			writer.write(" },\n    \"primaryMetric\": {\n      \"score\": " + number(result.score)
+					+ ",\n      \"scoreError\": " + number(result.error)
+					+ ",\n      \"scoreUnit\": \"ns/op\",\n      \"rawData\": [[");
+			for (int s = 0; s < result.samples.length; s++)
+				writer.write((s > 0 ? ", " : "") + number(result.samples[s]));
+			writer.write("]]\n    }\n  }" + (r + 1 < results.size() ? "," : "") + "\n");
+		}
+		writer.write("]\n");
+	}
+
+	private static String quote(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private static String number(double value) {
+		return Double.isNaN(value) ? "\"NaN\"" : Double.toString(value);
+	}
+
+}
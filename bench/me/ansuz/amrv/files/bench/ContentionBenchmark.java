@@ -0,0 +1,268 @@
+package me.ansuz.amrv.files.bench;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import me.ansuz.amrv.files.FileManager;
+import me.ansuz.amrv.files.ListFile;
+import me.ansuz.amrv.files.MapFile;
+import me.ansuz.amrv.files.PlainFile;
+
+/**
+ * Measures how reads and writes from many threads over a single shared file
+ * scale, comparing the concurrent files against the same files wrapped in
+ * <code>synchronized</code> blocks, run it with
+ *
+ * <pre>
+ * java me.ansuz.amrv.files.bench.ContentionBenchmark [options]
+ * </pre>
+ *
+ * <p>
+ * Options:
+ * <ul>
+ * <li><code>-threads 1,2,4,8</code> amounts of threads to run with, from one
+ * up to the amount of processors by default</li>
+ * <li><code>-duration s</code> seconds every run lasts, 5 by default</li>
+ * <li><code>-writes n</code> percentage of the operations that modify the
+ * file, 5 by default</li>
+ * <li><code>-filter name</code> only runs the file types containing the
+ * name</li>
+ * </ul>
+ *
+ * <p>
+ * For every file type, way of sharing and amount of threads the total
+ * throughput is printed together with how many times it is the throughput of a
+ * single thread, so read-mostly workloads should scale close to the amount of
+ * threads when the file is concurrent.
+ *
+ * @author Ansuz
+ *
+ */
+public final class ContentionBenchmark {
+
+	private static final int LINES = 10_000;
+	private static final int KEYS = 10_000;
+
+	/**
+	 * Operations over a shared file
+	 */
+	private interface Workload {
+
+		void read(Random random);
+
+		void write(Random random);
+
+	}
+
+	public static void main(String[] args) throws Exception {
+		final List<Integer> threads = new ArrayList<>();
+		long duration = 5;
+		int writes = 5;
+		String filter = "";
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-threads":
+				for (String amount : args[++i].split(","))
+					threads.add(Integer.parseInt(amount.trim()));
+				break;
+			case "-duration":
+				duration = Long.parseLong(args[++i]);
+				break;
+			case "-writes":
+				writes = Integer.parseInt(args[++i]);
+				break;
+			case "-filter":
+				filter = args[++i];
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (threads.isEmpty())
+			for (int amount = 1; amount <= Runtime.getRuntime().availableProcessors(); amount *= 2)
+				threads.add(amount);
+		FileManager.setDebugEnabled(false);
+		final File dir = Files.createTempDirectory("filemanager-contention").toFile();
+
+		System.out.println("Writes " + writes + "%, " + duration + "s per run, "
+				+ Runtime.getRuntime().availableProcessors() + " processors");
+		System.out.printf("%-10s %-13s %8s %14s %9s%n", "file", "sharing", "threads", "ops/s", "scaling");
+		for (String type : new String[] { "PlainFile", "ListFile", "MapFile" }) {
+			if (!type.contains(filter))
+				continue;
+			for (boolean concurrent : new boolean[] { false, true }) {
+				final Workload workload = workload(type, new File(dir, type + (concurrent ? "-c" : "-s")),
+						concurrent);
+				double single = 0;
+				for (int amount : threads) {
+					final double throughput = run(workload, amount, writes, TimeUnit.SECONDS.toNanos(duration));
+					if (single == 0)
+						single = throughput / amount;
+					System.out.printf("%-10s %-13s %8d %14.0f %8.2fx%n", type,
+							concurrent ? "concurrent" : "synchronized", amount, throughput, throughput / single);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the shared file with some contents and the operations over it
+	 */
+	private static Workload workload(String type, File file, boolean concurrent) {
+		switch (type) {
+		case "PlainFile": {
+			final PlainFile plain = FileManager.construct(file).toPlainFile(Charset.defaultCharset(), concurrent);
+			final StringBuilder contents = new StringBuilder();
+			for (int i = 0; i < LINES; i++)
+				contents.append(DataGenerator.key(i)).append('\n');
+			plain.setData(contents.toString());
+			plain.save();
+			// Appending drops the string built from the data, so every write makes
+			// the next read build it again
+			if (concurrent)
+				return new Workload() {
+					@Override
+					public void read(Random random) {
+						plain.getData();
+					}
+
+					@Override
+					public void write(Random random) {
+						plain.addData('.');
+					}
+				};
+			return new Workload() {
+				@Override
+				public void read(Random random) {
+					synchronized (plain) {
+						plain.getData();
+					}
+				}
+
+				@Override
+				public void write(Random random) {
+					synchronized (plain) {
+						plain.addData('.');
+					}
+				}
+			};
+		}
+		case "ListFile": {
+			final ListFile list = concurrent ? FileManager.construct(file).toListFile(ListFile.Option.CONCURRENT)
+					: FileManager.construct(file).toListFile();
+			list.clear();
+			for (int i = 0; i < LINES; i++)
+				list.addnewLine(DataGenerator.key(i));
+			list.save();
+			if (concurrent)
+				return new Workload() {
+					@Override
+					public void read(Random random) {
+						list.getData(random.nextInt(LINES));
+					}
+
+					@Override
+					public void write(Random random) {
+						list.setData(random.nextInt(LINES), DataGenerator.key(random.nextInt(LINES)));
+					}
+				};
+			return new Workload() {
+				@Override
+				public void read(Random random) {
+					synchronized (list) {
+						list.getData(random.nextInt(LINES));
+					}
+				}
+
+				@Override
+				public void write(Random random) {
+					synchronized (list) {
+						list.setData(random.nextInt(LINES), DataGenerator.key(random.nextInt(LINES)));
+					}
+				}
+			};
+		}
+		default: {
+			final MapFile map = concurrent ? FileManager.construct(file).toMapFile(MapFile.Option.CONCURRENT)
+					: FileManager.construct(file).toMapFile();
+			map.clear();
+			for (int i = 0; i < KEYS; i++)
+				map.put(DataGenerator.key(i), Integer.toString(i));
+			map.save();
+			if (concurrent)
+				return new Workload() {
+					@Override
+					public void read(Random random) {
+						map.get(DataGenerator.key(random.nextInt(KEYS)));
+					}
+
+					@Override
+					public void write(Random random) {
+						map.put(DataGenerator.key(random.nextInt(KEYS)), Integer.toString(random.nextInt()));
+					}
+				};
+			return new Workload() {
+				@Override
+				public void read(Random random) {
+					synchronized (map) {
+						map.get(DataGenerator.key(random.nextInt(KEYS)));
+					}
+				}
+
+				@Override
+				public void write(Random random) {
+					synchronized (map) {
+						map.put(DataGenerator.key(random.nextInt(KEYS)), Integer.toString(random.nextInt()));
+					}
+				}
+			};
+		}
+		}
+	}
+
+	/**
+	 * Runs the workload from the given amount of threads
+	 *
+	 * @return the operations per second of every thread together
+	 */
+	private static double run(Workload workload, int threads, int writes, long duration) throws Exception {
+		final LongAdder operations = new LongAdder();
+		final CountDownLatch ready = new CountDownLatch(threads);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final int id = t;
+			new Thread(() -> {
+				final Random random = new Random(id);
+				ready.countDown();
+				try {
+					ready.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				final long end = System.nanoTime() + duration;
+				long count = 0;
+				while ((count & 0xFF) != 0 || System.nanoTime() < end) {
+					if (random.nextInt(100) < writes)
+						workload.write(random);
+					else
+						workload.read(random);
+					count++;
+				}
+				operations.add(count);
+				done.countDown();
+			}, "contention-" + t).start();
+		}
+		ready.await();
+		final long start = System.nanoTime();
+		done.await();
+		return operations.sum() / ((System.nanoTime() - start) / 1e9);
+	}
+
+}
@@ -0,0 +1,179 @@
+package me.ansuz.amrv.files.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.FileOutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Generates the input files of the benchmarks, the same seed always generates
+ * the same files so results from different runs and machines can be compared.
+ *
+ * <p>
+ * Files are only generated if they do not exist yet, so the same directory can
+ * be reused between runs.
+ * 
+ * @author Ansuz
+ *
+ */
+public final class DataGenerator {
+
+	private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur",
+			"adipiscing", "elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore",
+			"magna", "aliqua" };
+	private static final String[] NAMESPACES = { "server", "client", "db", "pool", "cache", "net", "log",
+			"render", "audio", "input" };
+
+	private final File directory;
+	private final long seed;
+
+	/**
+	 * @param directory where the files are generated
+	 * @param seed      of the random contents
+	 */
+	public DataGenerator(File directory, long seed) {
+		this.directory = directory;
+		this.seed = seed;
+		directory.mkdirs();
+	}
+
+	/**
+	 * Generates a text file of approximately the given size
+	 *
+	 * @param bytes size of the file
+	 *
+	 * @return the file
+	 *
+	 * @throws IOException if the file cant be written
+	 */
+	public File text(long bytes) throws IOException {
+		final File file = new File(directory, "text-" + bytes + ".txt");
+		if (file.isFile() && file.length() >= bytes)
+			return file;
+		final Random random = new Random(seed);
+		try (Writer writer = writer(file)) {
+			long written = 0;
+			while (written < bytes) {
+				final String line = this.sentence(random) + "\n";
+				writer.write(line);
+				written += line.length();
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Generates a text file with the given amount of lines
+	 *
+	 * @param lines amount of lines
+	 *
+	 * @return the file
+	 *
+	 * @throws IOException if the file cant be written
+	 */
+	public File lines(int lines) throws IOException {
+		final File file = new File(directory, "lines-" + lines + ".txt");
+		if (file.isFile())
+			return file;
+		final Random random = new Random(seed);
+		try (Writer writer = writer(file)) {
+			for (int i = 0; i < lines; i++)
+				writer.write(this.sentence(random) + "\n");
+		}
+		return file;
+	}
+
+	/**
+	 * Generates a map file with the given amount of entries, the keys are
+	 * namespaced like a real configuration file
+	 *
+	 * @param entries amount of entries
+	 *
+	 * @return the file
+	 *
+	 * @throws IOException if the file cant be written
+	 */
+	public File map(int entries) throws IOException {
+		final File file = new File(directory, "map-" + entries + ".cfg");
+		if (file.isFile())
+			return file;
+		final Random random = new Random(seed);
+		try (Writer writer = writer(file)) {
+			writer.write("# generated with seed " + seed + "\n");
+			for (int i = 0; i < entries; i++)
+				writer.write(key(i) + " = " + this.value(random) + "\n");
+		}
+		return file;
+	}
+
+	/**
+	 * Generates a PNG image with random pixels
+	 *
+	 * @param width  of the image
+	 * @param height of the image
+	 *
+	 * @return the file
+	 *
+	 * @throws IOException if the file cant be written
+	 */
+	public File image(int width, int height) throws IOException {
+		final File file = new File(directory, "image-" + width + "x" + height + ".png");
+		if (file.isFile())
+			return file;
+		final Random random = new Random(seed);
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				image.setRGB(x, y, random.nextInt(0x1000000));
+		ImageIO.write(image, "png", file);
+		return file;
+	}
+
+	/**
+	 * Gets the key of the entry at the given index of the generated map files
+	 *
+	 * @param index of the entry
+	 *
+	 * @return the key
+	 */
+	public static String key(int index) {
+		return NAMESPACES[index % NAMESPACES.length] + "." + NAMESPACES[(index / 10) % NAMESPACES.length]
+				+ ".key" + index;
+	}
+
+	private String sentence(Random random) {
+		final StringBuilder builder = new StringBuilder();
+		final int words = 4 + random.nextInt(12);
+		for (int i = 0; i < words; i++) {
+			if (i > 0)
+				builder.append(' ');
+			builder.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return builder.toString();
+	}
+
+	private String value(Random random) {
+		switch (random.nextInt(4)) {
+		case 0:
+			return Integer.toString(random.nextInt(100000));
+		case 1:
+			return Boolean.toString(random.nextBoolean());
+		case 2:
+			return Double.toString(random.nextDouble());
+		default:
+			return WORDS[random.nextInt(WORDS.length)];
+		}
+	}
+
+	private static Writer writer(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,263 @@
+package me.ansuz.amrv.files.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import me.ansuz.amrv.files.FileManager;
+import me.ansuz.amrv.files.ImageFile;
+import me.ansuz.amrv.files.ListFile;
+import me.ansuz.amrv.files.MapFile;
+import me.ansuz.amrv.files.PlainFile;
+
+/**
+ * Benchmarks for every file type, run it with
+ *
+ * <pre>
+ * java me.ansuz.amrv.files.bench.FileBenchmarks [options]
+ * </pre>
+ *
+ * <p>
+ * Options:
+ * <ul>
+ * <li><code>-dir path</code> directory for the generated files, a temporal one by
+ * default</li>
+ * <li><code>-out file</code> where the JSON results are written,
+ * <code>bench-results.json</code> by default</li>
+ * <li><code>-filter regex</code> only runs the benchmarks whose name matches</li>
+ * <li><code>-quick</code> uses smaller inputs and shorter iterations</li>
+ * <li><code>-seed n</code> seed for the generated files</li>
+ * </ul>
+ * 
+ * @author Ansuz
+ *
+ */
+public final class FileBenchmarks {
+
+	private final Benchmark benchmark;
+	private final DataGenerator generator;
+	private final File work;
+	private final Pattern filter;
+	private final boolean quick;
+
+	private FileBenchmarks(Benchmark benchmark, DataGenerator generator, File work, Pattern filter,
+			boolean quick) {
+		this.benchmark = benchmark;
+		this.generator = generator;
+		this.work = work;
+		this.filter = filter;
+		this.quick = quick;
+	}
+
+	public static void main(String[] args) throws Exception {
+		File dir = null;
+		File out = new File("bench-results.json");
+		Pattern filter = Pattern.compile(".*");
+		boolean quick = false;
+		long seed = 42;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-dir":
+				dir = new File(args[++i]);
+				break;
+			case "-out":
+				out = new File(args[++i]);
+				break;
+			case "-filter":
+				filter = Pattern.compile(args[++i]);
+				break;
+			case "-quick":
+				quick = true;
+				break;
+			case "-seed":
+				seed = Long.parseLong(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (dir == null)
+			dir = Files.createTempDirectory("filemanager-bench").toFile();
+		FileManager.setDebugEnabled(false);
+
+		final Benchmark benchmark = quick ? new Benchmark(1, 3, 200) : new Benchmark(3, 5, 1000);
+		final File work = new File(dir, "work");
+		work.mkdirs();
+		final FileBenchmarks suite = new FileBenchmarks(benchmark, new DataGenerator(dir, seed), work, filter,
+				quick);
+		suite.plain();
+		suite.list();
+		suite.map();
+		suite.image();
+		suite.construct();
+
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8)) {
+			benchmark.writeJson(writer);
+		}
+		System.out.println("Results written to " + out.getAbsolutePath());
+	}
+
+	private boolean enabled(String name) {
+		return filter.matcher(name).find();
+	}
+
+	private void run(String name, Map<String, String> params, Benchmark.Operation operation) throws Exception {
+		if (this.enabled(name))
+			benchmark.run(name, params, operation);
+	}
+
+	/**
+	 * Copies a generated file into the work directory so it can be modified
+	 */
+	private File copy(File source) throws Exception {
+		final File target = new File(work, source.getName());
+		Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return target;
+	}
+
+	private static Map<String, String> param(String name, Object value) {
+		return Collections.singletonMap(name, String.valueOf(value));
+	}
+
+	private void plain() throws Exception {
+		final long[] sizes = quick ? new long[] { 1 << 10, 1 << 20 } : new long[] { 1 << 10, 1 << 20, 100 << 20 };
+		for (long size : sizes) {
+			if (!this.enabled("PlainFile"))
+				return;
+			final Map<String, String> params = param("size", size);
+			final PlainFile file = FileManager.construct(this.copy(generator.text(size))).toPlainFile();
+			this.run("PlainFile.load", params, () -> {
+				file.forceReload();
+				return file.length();
+			});
+			this.run("PlainFile.saveBuffered", params, () -> {
+				file.addData("");
+				return file.save(true);
+			});
+			this.run("PlainFile.saveUnbuffered", params, () -> {
+				file.addData("");
+				return file.save(false);
+			});
+			this.run("PlainFile.getData", params, () -> {
+				file.addData('x');
+				return file.getData();
+			});
+			file.forceReload();
+			this.run("PlainFile.addData", params, () -> {
+				file.addData("appended line\n");
+				return file.length();
+			});
+			file.forceReload();
+		}
+	}
+
+	private void list() throws Exception {
+		final int[] counts = quick ? new int[] { 1000, 100000 } : new int[] { 1000, 100000, 1000000 };
+		for (int lines : counts) {
+			if (!this.enabled("ListFile"))
+				return;
+			final Map<String, String> params = param("lines", lines);
+			final ListFile file = FileManager.construct(this.copy(generator.lines(lines))).toListFile();
+			final Random random = new Random(lines);
+			this.run("ListFile.load", params, () -> {
+				file.forceReload();
+				return file.length();
+			});
+			this.run("ListFile.saveBuffered", params, () -> {
+				file.setData(0, file.getData(0));
+				return file.save(true);
+			});
+			this.run("ListFile.saveUnbuffered", params, () -> {
+				file.setData(0, file.getData(0));
+				return file.save(false);
+			});
+			this.run("ListFile.getData", params, () -> file.getData(random.nextInt(lines)));
+			this.run("ListFile.addData", params, () -> {
+				file.addnewLine("appended line");
+				return file.length();
+			});
+			this.run("ListFile.appendSave", params, () -> {
+				file.addnewLine("appended line");
+				return file.save();
+			});
+			final ListFile indexed = FileManager.construct(this.copy(generator.lines(lines)))
+					.toListFile(ListFile.Option.INDEXED);
+			this.run("ListFile.indexedLoad", params, () -> {
+				indexed.forceReload();
+				return indexed.length();
+			});
+			this.run("ListFile.indexedGetData", params, () -> indexed.getData(random.nextInt(lines)));
+		}
+	}
+
+	private void map() throws Exception {
+		final int[] counts = quick ? new int[] { 1000, 10000 } : new int[] { 1000, 100000 };
+		for (int entries : counts) {
+			if (!this.enabled("MapFile"))
+				return;
+			final Map<String, String> params = param("entries", entries);
+			final MapFile file = FileManager.construct(this.copy(generator.map(entries))).toMapFile();
+			final Random random = new Random(entries);
+			this.run("MapFile.load", params, () -> {
+				file.forceReload();
+				return file.getEntrySet().size();
+			});
+			this.run("MapFile.get", params, () -> file.get(DataGenerator.key(random.nextInt(entries))));
+			this.run("MapFile.put", params, () -> {
+				file.put(DataGenerator.key(random.nextInt(entries)), "value");
+				return null;
+			});
+			this.run("MapFile.saveBuffered", params, () -> {
+				file.put(DataGenerator.key(0), "value");
+				return file.save(true);
+			});
+			this.run("MapFile.saveUnbuffered", params, () -> {
+				file.put(DataGenerator.key(0), "value");
+				return file.save(false);
+			});
+		}
+	}
+
+	private void image() throws Exception {
+		final int[] sizes = quick ? new int[] { 64 } : new int[] { 256, 1024 };
+		for (int size : sizes) {
+			if (!this.enabled("ImageFile"))
+				return;
+			final Map<String, String> params = param("pixels", size + "x" + size);
+			final ImageFile file = FileManager.construct(this.copy(generator.image(size, size))).toImageFile();
+			this.run("ImageFile.load", params, () -> {
+				file.forceReload();
+				return file.getWidth();
+			});
+			this.run("ImageFile.saveBuffered", params, () -> {
+				file.getImage();
+				return file.save(true);
+			});
+			this.run("ImageFile.saveUnbuffered", params, () -> {
+				file.getImage();
+				return file.save(false);
+			});
+		}
+	}
+
+	private void construct() throws Exception {
+		final File existing = this.copy(generator.text(1 << 10));
+		final Map<String, String> params = new LinkedHashMap<>();
+		this.run("FileManager.construct", params, () -> FileManager.construct(existing));
+		this.run("FileManager.constructPlainFile", params,
+				() -> FileManager.construct(existing).toPlainFile().length());
+		final int[] counter = { 0 };
+		this.run("FileManager.constructNew", params,
+				() -> FileManager.construct(new File(work, "new/" + (counter[0]++) + ".txt")));
+	}
+
+}
@@ -0,0 +1,97 @@
+package me.ansuz.amrv.files.bench;
+
+/**
+ * Histogram of latencies with a relative error below 7%, every power of two is
+ * split into 16 buckets so the high percentiles can be told apart.
+ *
+ * <p>
+ * It is not thread safe, every thread should record on its own histogram and
+ * merge them at the end.
+ * 
+ * @author Ansuz
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private final long[] counts = new long[(Long.SIZE + 1) * SUB_BUCKETS];
+	private long total;
+	private long max;
+
+	/**
+	 * @param nanos latency to be recorded
+	 */
+	public void record(long nanos) {
+		counts[index(Math.max(0, nanos))]++;
+		total++;
+		if (nanos > max)
+			max = nanos;
+	}
+
+	/**
+	 * Adds every latency of the other histogram to this one
+	 *
+	 * @param other histogram to be added
+	 */
+	public void merge(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] += other.counts[i];
+		total += other.total;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * @return the amount of latencies recorded
+	 */
+	public long count() {
+		return total;
+	}
+
+	/**
+	 * @return the highest latency recorded
+	 */
+	public long max() {
+		return max;
+	}
+
+	/**
+	 * Gets the latency below which the given fraction of the recorded latencies
+	 * are
+	 *
+	 * @param percentile between 0 and 1
+	 *
+	 * @return the upper bound of the bucket of that percentile in nanoseconds
+	 */
+	public long percentile(double percentile) {
+		if (total == 0)
+			return 0;
+		final long wanted = (long) Math.ceil(total * percentile);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= wanted)
+				return Math.min(upper(i), max);
+		}
+		return max;
+	}
+
+	private static int index(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		final int bits = Long.SIZE - Long.numberOfLeadingZeros(value);
+		final int sub = (int) (value >>> (bits - 1 - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (bits - SUB_BITS) * SUB_BUCKETS + sub;
+	}
+
+	private static long upper(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		final int bits = index / SUB_BUCKETS + SUB_BITS;
+		final long sub = index % SUB_BUCKETS;
+		final int shift = bits - 1 - SUB_BITS;
+		return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+}
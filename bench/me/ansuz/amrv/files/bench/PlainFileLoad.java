@@ -0,0 +1,94 @@
+package me.ansuz.amrv.files.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+import me.ansuz.amrv.files.FileManager;
+
+/**
+ * Measures constructing a PlainFile and reading its data.
+ *
+ * <p>
+ * Usage: {@code java me.ansuz.amrv.files.bench.PlainFileLoad [bytes...]},
+ * without arguments the sizes are 1 KB, 1 MB and 100 MB. The text is
+ * generated from a fixed seed so every run reads the same file. Every size is
+ * warmed up and then measured for at least 3 operations and 5 seconds, and the
+ * average time per operation is printed.
+ *
+ * <p>
+ * The file is renamed before every operation so each construction reads it
+ * from the disk again
+ *
+ * @author Ansuz
+ *
+ */
+public final class PlainFileLoad {
+
+	private static final long[] SIZES = { 1L << 10, 1L << 20, 100L << 20 };
+	private static final int OPERATIONS = 3;
+	private static final long DURATION = 5_000_000_000L;
+
+	private static int counter;
+
+	private PlainFileLoad() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		long[] sizes = SIZES;
+		if (args.length > 0) {
+			sizes = new long[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Long.parseLong(args[i]);
+		}
+		FileManager.setDebugEnabled(false);
+		File directory = Files.createTempDirectory("plainfileload").toFile();
+		for (long size : sizes) {
+			File file = generate(new File(directory, "text.txt"), size);
+			file = run(file);
+			long total = 0;
+			int operations = 0;
+			while (operations < OPERATIONS || total < DURATION) {
+				long start = System.nanoTime();
+				file = run(file);
+				total += System.nanoTime() - start;
+				operations++;
+			}
+			double average = total / (double) operations / 1_000_000;
+			System.out.println(String.format(Locale.ROOT, "%12d bytes %12.3f ms/op (%d ops)", size, average,
+					operations));
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private static File run(File file) throws IOException {
+		File next = new File(file.getParentFile(), "text-" + (counter++) + ".txt");
+		if (!file.renameTo(next))
+			throw new IOException("Cant rename " + file);
+		if (FileManager.construct(next).toPlainFile().getData().isEmpty())
+			throw new IOException("Nothing was read from " + next);
+		return next;
+	}
+
+	private static File generate(File file, long size) throws IOException {
+		Random random = new Random(size);
+		byte[] line = new byte[80];
+		try (OutputStream out = Files.newOutputStream(file.toPath())) {
+			long written = 0;
+			while (written < size) {
+				int length = (int) Math.min(line.length, size - written);
+				for (int i = 0; i < length - 1; i++)
+					line[i] = (byte) ('a' + random.nextInt(26));
+				line[length - 1] = '\n';
+				out.write(line, 0, length);
+				written += length;
+			}
+		}
+		return file;
+	}
+
+}
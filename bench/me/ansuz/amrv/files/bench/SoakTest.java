@@ -0,0 +1,275 @@
+package me.ansuz.amrv.files.bench;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import me.ansuz.amrv.files.BaseFile;
+import me.ansuz.amrv.files.FileConstructor;
+import me.ansuz.amrv.files.FileManager;
+import me.ansuz.amrv.files.ListFile;
+import me.ansuz.amrv.files.MapFile;
+import me.ansuz.amrv.files.PlainFile;
+
+/**
+ * Runs a mixed workload of reloads, reads, modifications and saves from many
+ * threads over many files for a fixed time, to see how the library behaves
+ * under a load similar to a real application, run it with
+ *
+ * <pre>
+ * java me.ansuz.amrv.files.bench.SoakTest [options]
+ * </pre>
+ *
+ * <p>
+ * Options:
+ * <ul>
+ * <li><code>-threads n</code> amount of threads, the amount of processors by
+ * default</li>
+ * <li><code>-files n</code> amount of files, 2000 by default</li>
+ * <li><code>-duration s</code> seconds to run, 60 by default</li>
+ * <li><code>-mix reload:read:mutate:save</code> weight of every operation,
+ * <code>10:60:20:10</code> by default</li>
+ * <li><code>-dir path</code> directory for the files, a temporal one by
+ * default</li>
+ * <li><code>-seed n</code> seed for the operations and contents</li>
+ * </ul>
+ *
+ * <p>
+ * The files are split between PlainFiles, ListFiles and MapFiles, every file
+ * is only used by one thread at a time as files are not thread safe. At the end
+ * the throughput, the latency percentiles of every operation, the allocation
+ * rate and the time spent on garbage collection are printed.
+ * 
+ * @author Ansuz
+ *
+ */
+public final class SoakTest {
+
+	private static final String[] OPERATIONS = { "reload", "read", "mutate", "save" };
+
+	private final BaseFile[] files;
+	private final int[] mix;
+	private final long seed;
+
+	private SoakTest(BaseFile[] files, int[] mix, long seed) {
+		this.files = files;
+		this.mix = mix;
+		this.seed = seed;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int count = 2000;
+		long duration = 60;
+		int[] mix = { 10, 60, 20, 10 };
+		File dir = null;
+		long seed = 42;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "-files":
+				count = Integer.parseInt(args[++i]);
+				break;
+			case "-duration":
+				duration = Long.parseLong(args[++i]);
+				break;
+			case "-mix":
+				final String[] weights = args[++i].split(":");
+				for (int w = 0; w < mix.length; w++)
+					mix[w] = Integer.parseInt(weights[w]);
+				break;
+			case "-dir":
+				dir = new File(args[++i]);
+				break;
+			case "-seed":
+				seed = Long.parseLong(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (dir == null)
+			dir = Files.createTempDirectory("filemanager-soak").toFile();
+		FileManager.setDebugEnabled(false);
+
+		System.out.println("Preparing " + count + " files in " + dir.getAbsolutePath());
+		final SoakTest test = new SoakTest(prepare(dir, count, seed), mix, seed);
+		System.out.println("Running " + threads + " threads for " + duration + "s, mix reload:read:mutate:save "
+				+ mix[0] + ":" + mix[1] + ":" + mix[2] + ":" + mix[3]);
+		test.run(threads, TimeUnit.SECONDS.toNanos(duration));
+	}
+
+	/**
+	 * Creates the files with some initial contents, a third of each type
+	 */
+	private static BaseFile[] prepare(File dir, int count, long seed) throws Exception {
+		final List<Path> paths = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			paths.add(new File(dir, "d" + (i % 32) + File.separator + "f" + i + (i % 3 == 2 ? ".cfg" : ".txt"))
+					.toPath());
+		final List<FileConstructor> constructors = FileManager.constructAll(paths);
+		final Random random = new Random(seed);
+		final BaseFile[] files = new BaseFile[count];
+		for (int i = 0; i < count; i++) {
+			final FileConstructor constructor = constructors.get(i);
+			switch (i % 3) {
+			case 0:
+				final PlainFile plain = constructor.toPlainFile();
+				plain.setData("");
+				for (int l = 0; l < 50; l++)
+					plain.addData("line " + random.nextInt() + "\n");
+				files[i] = plain;
+				break;
+			case 1:
+				final ListFile list = constructor.toListFile();
+				list.clear();
+				for (int l = 0; l < 200; l++)
+					list.addnewLine("line " + random.nextInt());
+				files[i] = list;
+				break;
+			default:
+				final MapFile map = constructor.toMapFile();
+				map.clear();
+				for (int e = 0; e < 100; e++)
+					map.put(DataGenerator.key(e), Integer.toString(random.nextInt()));
+				files[i] = map;
+			}
+			files[i].save();
+		}
+		return files;
+	}
+
+	private void run(int threads, long duration) throws Exception {
+		final LatencyHistogram[][] histograms = new LatencyHistogram[threads][OPERATIONS.length];
+		final long[] allocated = new long[threads];
+		final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		final boolean allocation = threadBean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported();
+		final long gcCount = gcCount(), gcTime = gcTime();
+		final CountDownLatch done = new CountDownLatch(threads);
+		final long start = System.nanoTime();
+		final long end = start + duration;
+
+		for (int t = 0; t < threads; t++) {
+			final int id = t;
+			for (int o = 0; o < OPERATIONS.length; o++)
+				histograms[t][o] = new LatencyHistogram();
+			final Thread thread = new Thread(() -> {
+				final long before = allocation ? allocated() : 0;
+				this.work(new Random(seed + id), histograms[id], end);
+				allocated[id] = allocation ? allocated() - before : 0;
+				done.countDown();
+			}, "soak-" + t);
+			thread.start();
+		}
+		done.await();
+		final double seconds = (System.nanoTime() - start) / 1e9;
+
+		final LatencyHistogram total = new LatencyHistogram();
+		System.out.println();
+		System.out.printf("%-8s %12s %12s %12s %12s %12s %12s%n", "op", "count", "ops/s", "p50 us", "p99 us",
+				"p999 us", "max us");
+		for (int o = 0; o < OPERATIONS.length; o++) {
+			final LatencyHistogram merged = new LatencyHistogram();
+			for (int t = 0; t < threads; t++)
+				merged.merge(histograms[t][o]);
+			total.merge(merged);
+			print(OPERATIONS[o], merged, seconds);
+		}
+		print("total", total, seconds);
+
+		long bytes = 0;
+		for (long thread : allocated)
+			bytes += thread;
+		System.out.println();
+		if (allocation)
+			System.out.printf("Allocation rate: %.1f MB/s (%.0f bytes/op)%n", bytes / seconds / (1 << 20),
+					(double) bytes / Math.max(1, total.count()));
+		else
+			System.out.println("Allocation rate: not supported by this virtual machine");
+		System.out.printf("GC: %d collections, %d ms paused (%.2f%% of the time)%n", gcCount() - gcCount,
+				gcTime() - gcTime, (gcTime() - gcTime) / 10.0 / seconds);
+	}
+
+	/**
+	 * Runs random operations on random files until the end
+	 */
+	private void work(Random random, LatencyHistogram[] histograms, long end) {
+		int weights = 0;
+		for (int weight : mix)
+			weights += weight;
+		while (System.nanoTime() < end) {
+			final BaseFile file = files[random.nextInt(files.length)];
+			int pick = random.nextInt(weights), operation = 0;
+			while (pick >= mix[operation])
+				pick -= mix[operation++];
+			final long start = System.nanoTime();
+			synchronized (file) {
+				this.operate(file, operation, random);
+			}
+			histograms[operation].record(System.nanoTime() - start);
+		}
+	}
+
+	private void operate(BaseFile file, int operation, Random random) {
+		switch (operation) {
+		case 0:
+			file.reload();
+			break;
+		case 1:
+			if (file instanceof PlainFile)
+				((PlainFile) file).getData();
+			else if (file instanceof ListFile)
+				((ListFile) file).getData(random.nextInt(Math.max(1, ((ListFile) file).length())));
+			else
+				((MapFile) file).get(DataGenerator.key(random.nextInt(100)));
+			break;
+		case 2:
+			if (file instanceof PlainFile)
+				((PlainFile) file).addData("more " + random.nextInt() + "\n");
+			else if (file instanceof ListFile)
+				((ListFile) file).addnewLine("more " + random.nextInt());
+			else
+				((MapFile) file).put(DataGenerator.key(random.nextInt(100)), Integer.toString(random.nextInt()));
+			break;
+		default:
+			file.save();
+		}
+	}
+
+	private static void print(String name, LatencyHistogram histogram, double seconds) {
+		System.out.printf("%-8s %12d %12.0f %12.1f %12.1f %12.1f %12.1f%n", name, histogram.count(),
+				histogram.count() / seconds, histogram.percentile(0.5) / 1e3, histogram.percentile(0.99) / 1e3,
+				histogram.percentile(0.999) / 1e3, histogram.max() / 1e3);
+	}
+
+	private static long allocated() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(0, gc.getCollectionCount());
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			time += Math.max(0, gc.getCollectionTime());
+		return time;
+	}
+
+}
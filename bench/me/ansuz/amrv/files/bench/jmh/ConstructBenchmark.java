@@ -0,0 +1,60 @@
+package me.ansuz.amrv.files.bench.jmh;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.ansuz.amrv.files.FileConstructor;
+import me.ansuz.amrv.files.FileManager;
+
+/**
+ * Constructing files that exist and files that have to be created
+ *
+ * @author Ansuz
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstructBenchmark {
+
+	private File existing;
+	private File directory;
+	private int counter;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		existing = Inputs.copy(Inputs.generator().text(1 << 10));
+		directory = new File(Inputs.work(), "new");
+	}
+
+	@Benchmark
+	public FileConstructor construct() {
+		return FileManager.construct(existing);
+	}
+
+	@Benchmark
+	public int constructPlainFile() {
+		return FileManager.construct(existing).toPlainFile().length();
+	}
+
+	@Benchmark
+	public FileConstructor constructNew() {
+		return FileManager.construct(new File(directory, (counter++) + ".txt"));
+	}
+
+}
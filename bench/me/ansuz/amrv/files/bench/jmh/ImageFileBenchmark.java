@@ -0,0 +1,64 @@
+package me.ansuz.amrv.files.bench.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.ansuz.amrv.files.FileManager;
+import me.ansuz.amrv.files.ImageFile;
+
+/**
+ * Decoding and encoding PNG images of different sizes
+ *
+ * @author Ansuz
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageFileBenchmark {
+
+	@Param({ "256", "1024" })
+	public int pixels;
+
+	private ImageFile file;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		file = FileManager.construct(Inputs.copy(Inputs.generator().image(pixels, pixels))).toImageFile();
+	}
+
+	@Benchmark
+	public int load() {
+		file.forceReload();
+		return file.getWidth();
+	}
+
+	@Benchmark
+	public boolean saveBuffered() {
+		// Marks the image as modified so it is encoded again
+		file.getImage();
+		return file.save(true);
+	}
+
+	@Benchmark
+	public boolean saveUnbuffered() {
+		file.getImage();
+		return file.save(false);
+	}
+
+}
@@ -0,0 +1,75 @@
+package me.ansuz.amrv.files.bench.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import me.ansuz.amrv.files.FileManager;
+import me.ansuz.amrv.files.bench.DataGenerator;
+
+/**
+ * Input files of the JMH benchmarks, generated with the same seed as
+ * <code>FileBenchmarks</code> so both give comparable results.
+ *
+ * <p>
+ * The directory and the seed can be changed with the
+ * <code>bench.dir</code> and <code>bench.seed</code> system properties, pass
+ * them to the forks with <code>-jvmArgs</code>.
+ *
+ * @author Ansuz
+ *
+ */
+final class Inputs {
+
+	private static DataGenerator generator;
+	private static File work;
+
+	private Inputs() {
+	}
+
+	/**
+	 * @return the generator of the input files, created on the first use
+	 *
+	 * @throws IOException if the directory cant be created
+	 */
+	static synchronized DataGenerator generator() throws IOException {
+		if (generator == null) {
+			FileManager.setDebugEnabled(false);
+			final String dir = System.getProperty("bench.dir");
+			final File directory = dir == null ? Files.createTempDirectory("filemanager-jmh").toFile()
+					: new File(dir);
+			generator = new DataGenerator(directory, Long.getLong("bench.seed", 42));
+			work = new File(directory, "work");
+			work.mkdirs();
+		}
+		return generator;
+	}
+
+	/**
+	 * Copies a generated file into the work directory so it can be modified
+	 *
+	 * @param source generated file
+	 *
+	 * @return the copy
+	 *
+	 * @throws IOException if the file cant be copied
+	 */
+	static synchronized File copy(File source) throws IOException {
+		generator();
+		final File target = new File(work, source.getName());
+		Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return target;
+	}
+
+	/**
+	 * @return the directory where the benchmarks can create their own files
+	 *
+	 * @throws IOException if the directory cant be created
+	 */
+	static synchronized File work() throws IOException {
+		generator();
+		return work;
+	}
+
+}
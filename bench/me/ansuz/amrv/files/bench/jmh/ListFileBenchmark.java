@@ -0,0 +1,104 @@
+package me.ansuz.amrv.files.bench.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.ansuz.amrv.files.FileManager;
+import me.ansuz.amrv.files.ListFile;
+
+/**
+ * Loading, saving and reading list files of different lengths, both loaded
+ * and indexed
+ *
+ * @author Ansuz
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListFileBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int lines;
+
+	private ListFile file;
+	private ListFile indexed;
+	private Random random;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		file = FileManager.construct(Inputs.copy(Inputs.generator().lines(lines))).toListFile();
+		indexed = FileManager.construct(Inputs.copy(Inputs.generator().lines(lines)))
+				.toListFile(ListFile.Option.INDEXED);
+		random = new Random(lines);
+	}
+
+	@Setup(Level.Iteration)
+	public void restore() {
+		// The appended lines of the previous iteration are discarded
+		file.forceReload();
+	}
+
+	@Benchmark
+	public int load() {
+		file.forceReload();
+		return file.length();
+	}
+
+	@Benchmark
+	public boolean saveBuffered() {
+		file.setData(0, file.getData(0));
+		return file.save(true);
+	}
+
+	@Benchmark
+	public boolean saveUnbuffered() {
+		file.setData(0, file.getData(0));
+		return file.save(false);
+	}
+
+	@Benchmark
+	public String getData() {
+		return file.getData(random.nextInt(lines));
+	}
+
+	@Benchmark
+	public int addData() {
+		file.addnewLine("appended line");
+		return file.length();
+	}
+
+	@Benchmark
+	public boolean appendSave() {
+		file.addnewLine("appended line");
+		return file.save();
+	}
+
+	@Benchmark
+	public int indexedLoad() {
+		indexed.forceReload();
+		return indexed.length();
+	}
+
+	@Benchmark
+	public String indexedGetData() {
+		return indexed.getData(random.nextInt(lines));
+	}
+
+}
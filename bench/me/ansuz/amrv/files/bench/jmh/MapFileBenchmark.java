@@ -0,0 +1,77 @@
+package me.ansuz.amrv.files.bench.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.ansuz.amrv.files.FileManager;
+import me.ansuz.amrv.files.MapFile;
+import me.ansuz.amrv.files.bench.DataGenerator;
+
+/**
+ * Loading, saving, reading and writing map files of different sizes
+ *
+ * @author Ansuz
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapFileBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int entries;
+
+	private MapFile file;
+	private Random random;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		file = FileManager.construct(Inputs.copy(Inputs.generator().map(entries))).toMapFile();
+		random = new Random(entries);
+	}
+
+	@Benchmark
+	public int load() {
+		file.forceReload();
+		return file.getEntrySet().size();
+	}
+
+	@Benchmark
+	public String get() {
+		return file.get(DataGenerator.key(random.nextInt(entries)));
+	}
+
+	@Benchmark
+	public void put() {
+		file.put(DataGenerator.key(random.nextInt(entries)), "value");
+	}
+
+	@Benchmark
+	public boolean saveBuffered() {
+		file.put(DataGenerator.key(0), "value");
+		return file.save(true);
+	}
+
+	@Benchmark
+	public boolean saveUnbuffered() {
+		file.put(DataGenerator.key(0), "value");
+		return file.save(false);
+	}
+
+}
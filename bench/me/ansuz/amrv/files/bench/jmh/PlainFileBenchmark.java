@@ -0,0 +1,82 @@
+package me.ansuz.amrv.files.bench.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.ansuz.amrv.files.FileManager;
+import me.ansuz.amrv.files.PlainFile;
+
+/**
+ * Loading, saving and modifying plain files of different sizes
+ *
+ * @author Ansuz
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlainFileBenchmark {
+
+	@Param({ "1024", "1048576", "104857600" })
+	public long size;
+
+	private PlainFile file;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		file = FileManager.construct(Inputs.copy(Inputs.generator().text(size))).toPlainFile();
+	}
+
+	@Setup(Level.Iteration)
+	public void restore() {
+		// The appended data of the previous iteration is discarded
+		file.forceReload();
+	}
+
+	@Benchmark
+	public int load() {
+		file.forceReload();
+		return file.length();
+	}
+
+	@Benchmark
+	public boolean saveBuffered() {
+		file.addData("");
+		return file.save(true);
+	}
+
+	@Benchmark
+	public boolean saveUnbuffered() {
+		file.addData("");
+		return file.save(false);
+	}
+
+	@Benchmark
+	public String getData() {
+		// Modified so the string is built again on every call
+		file.addData('x');
+		return file.getData();
+	}
+
+	@Benchmark
+	public int addData() {
+		file.addData("appended line\n");
+		return file.length();
+	}
+
+}
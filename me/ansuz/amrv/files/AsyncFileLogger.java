@@ -0,0 +1,234 @@
+package me.ansuz.amrv.files;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A logger that prints the messages from a background thread, so the threads
+ * that log never wait for the stream.
+ *
+ * <p>
+ * The messages are stored in a lock-free ring buffer of fixed capacity until
+ * they are printed, if the buffer is full the new messages are discarded
+ * instead of blocking and the amount of discarded messages can be obtained with
+ * <code>getDropped()</code>. Warnings and errors can be printed on different
+ * streams. This is the default logger of the manager, printing the warnings on
+ * <code>System.out</code> and the errors on <code>System.err</code>.
+ *
+ * <p>
+ * The thread runs until <code>close()</code> is called, which prints the
+ * messages still waiting before returning. A logger that is never closed prints
+ * them when the program ends.
+ *
+ * @author Ansuz
+ *
+ */
+public class AsyncFileLogger implements FileLogger, Closeable {
+
+	// Longest time the thread sleeps without checking the buffer
+	private static final long SLEEP_NANOS = 100_000_000L;
+
+	private static final class Record {
+		final Level level;
+		final String message;
+		final Throwable error;
+
+		Record(Level level, String message, Throwable error) {
+			this.level = level;
+			this.message = message;
+			this.error = error;
+		}
+	}
+
+	private final PrintStream out;
+	private final PrintStream err;
+	// Every slot has the position it can be written at, or that position plus one
+	// once the record on it can be read
+	private final AtomicReferenceArray<Record> records;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	// Next position to be read and next position to be written
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread thread;
+	private final Thread hook;
+	private volatile boolean waiting;
+	private volatile boolean closed;
+
+	/**
+	 * Creates the logger printing every message on the same stream and starts its
+	 * thread
+	 *
+	 * @param out      stream where the messages will be printed
+	 * @param capacity amount of messages that can wait to be printed, rounded up
+	 *                 to a power of two
+	 */
+	public AsyncFileLogger(PrintStream out, int capacity) {
+		this(out, out, capacity);
+	}
+
+	/**
+	 * Creates the logger and starts its thread
+	 *
+	 * @param out      stream where the warnings will be printed
+	 * @param err      stream where the errors will be printed
+	 * @param capacity amount of messages that can wait to be printed, rounded up
+	 *                 to a power of two
+	 */
+	public AsyncFileLogger(PrintStream out, PrintStream err, int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("The capacity must be positive");
+		// At least two slots, as a single one can not tell a written slot from a
+		// free one
+		final int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		this.out = out;
+		this.err = err;
+		this.records = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+			sequences.set(i, i);
+		this.mask = size - 1;
+		this.thread = new Thread(this::run, "FileManager-Logger");
+		this.thread.setDaemon(true);
+		// Prints the messages still waiting when the program ends
+		this.hook = new Thread(this::close, "FileManager-Logger-Exit");
+		Runtime.getRuntime().addShutdownHook(hook);
+		this.thread.start();
+	}
+
+	@Override
+	public boolean isEnabled(Level level) {
+		return true;
+	}
+
+	@Override
+	public void log(Level level, String message, Throwable error) {
+		if (closed || !this.offer(new Record(level, message, error))) {
+			dropped.incrementAndGet();
+			return;
+		}
+		if (waiting)
+			LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Gets how many messages were discarded because the buffer was full or the
+	 * logger was closed
+	 *
+	 * @return the amount of discarded messages
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Stops the thread of the logger after printing the messages still waiting,
+	 * the messages logged after this are discarded. Closing it again does
+	 * nothing.
+	 */
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			try {
+				Runtime.getRuntime().removeShutdownHook(hook);
+			} catch (IllegalStateException e) {
+				// The program is already ending, the hook is what is closing it
+			}
+			LockSupport.unpark(thread);
+		}
+		if (Thread.currentThread() != thread)
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+	}
+
+	/**
+	 * Stores a record on the buffer
+	 *
+	 * @return false if the buffer is full
+	 */
+	private boolean offer(final Record record) {
+		long position = tail.get();
+		while (true) {
+			final int index = (int) position & mask;
+			final long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					records.set(index, record);
+					sequences.set(index, position + 1);
+					return true;
+				}
+			} else if (difference < 0)
+				// The slot still holds the record written a lap before
+				return false;
+			position = tail.get();
+		}
+	}
+
+	/**
+	 * Takes the oldest record from the buffer
+	 *
+	 * @return the record or null if the buffer is empty
+	 */
+	private Record poll() {
+		long position = head.get();
+		while (true) {
+			final int index = (int) position & mask;
+			final long difference = sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					final Record record = records.get(index);
+					records.set(index, null);
+					sequences.set(index, position + mask + 1);
+					return record;
+				}
+			} else if (difference < 0)
+				// Nothing was written on the slot yet
+				return null;
+			position = head.get();
+		}
+	}
+
+	private void run() {
+		while (!closed) {
+			Record record = this.poll();
+			if (record == null) {
+				// Set before checking again, so a record offered after the check
+				// always wakes the thread
+				waiting = true;
+				record = this.poll();
+				if (record == null && !closed)
+					LockSupport.parkNanos(this, SLEEP_NANOS);
+				waiting = false;
+			}
+			if (record != null)
+				this.print(record);
+		}
+		Record record;
+		while ((record = this.poll()) != null)
+			this.print(record);
+		out.flush();
+		err.flush();
+	}
+
+	private void print(Record record) {
+		if (record.level == Level.ERROR) {
+			err.println(FileManager.ERROR + record.message);
+			if (record.error != null)
+				record.error.printStackTrace(err);
+		} else {
+			out.println(FileManager.WARNING + record.message);
+			if (record.error != null)
+				record.error.printStackTrace(out);
+		}
+	}
+
+}
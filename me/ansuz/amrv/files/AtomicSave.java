@@ -0,0 +1,186 @@
+package me.ansuz.amrv.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import me.ansuz.amrv.files.BaseFile.FileOperationResult;
+import me.ansuz.amrv.files.FileManager.FileErrorMessage;
+
+/**
+ * Saves files so a crash never leaves them half written, the contents are
+ * written to a temporal file on the same directory, forced to the disk and then
+ * renamed over the file, so the file always has either the old or the new
+ * contents. The directory is forced too so the rename itself is not lost.
+ *
+ * <p>
+ * Forcing is the slowest part, so many files can be saved as a group that
+ * forces all of them at the same time and every directory only once.
+ *
+ * @author Ansuz
+ *
+ */
+final class AtomicSave {
+
+	private AtomicSave() {
+	}
+
+	/**
+	 * Creates an empty temporal file next to the given one, with the same
+	 * permissions if the system supports them
+	 *
+	 * @param file that will be replaced by the temporal one
+	 *
+	 * @return the temporal file
+	 *
+	 * @throws IOException if the temporal file cant be created
+	 */
+	static File temporal(File file) throws IOException {
+		final Path path = file.getAbsoluteFile().toPath();
+		final Path temporal = Files.createTempFile(path.getParent(), "." + file.getName() + ".", ".tmp");
+		try {
+			Files.setPosixFilePermissions(temporal, Files.getPosixFilePermissions(path));
+		} catch (IOException | UnsupportedOperationException e) {
+			// The file does not exist yet or the system has no such permissions
+		}
+		return temporal.toFile();
+	}
+
+	/**
+	 * Forces the contents of the file to the disk
+	 *
+	 * @param file to be forced
+	 *
+	 * @throws IOException if the file cant be forced
+	 */
+	static void force(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Replaces the file with the temporal one in a single step, if the system
+	 * cant rename atomically the file is replaced anyways
+	 *
+	 * @param temporal with the new contents
+	 * @param file     to be replaced
+	 *
+	 * @throws IOException if the file cant be replaced
+	 */
+	static void replace(File temporal, File file) throws IOException {
+		try {
+			Files.move(temporal.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporal.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Forces the directory so the renames done on it are kept, some systems do
+	 * not allow to open directories so this does nothing on them
+	 *
+	 * @param directory to be forced
+	 */
+	static void syncDirectory(File directory) {
+		if (directory == null)
+			return;
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// Directories cant be forced on this system
+		}
+	}
+
+	/**
+	 * Deletes the temporal file after a failure
+	 */
+	private static void discard(File temporal) {
+		if (temporal != null)
+			temporal.delete();
+	}
+
+	/**
+	 * Saves all the files atomically sharing the cost of forcing them, first
+	 * every file is written to its temporal file, then all of them are forced at
+	 * the same time, renamed and finally every directory is forced once.
+	 *
+	 * @param collection of files to be saved
+	 * @param buffered if the files should be written with buffers
+	 *
+	 * @return the result of every file in the same order
+	 */
+	static List<FileOperationResult> saveAll(Collection<? extends BaseFile> collection, boolean buffered) {
+		final BaseFile[] files = collection.toArray(new BaseFile[0]);
+		final FileOperationResult[] results = new FileOperationResult[files.length];
+		final File[] temporals = new File[files.length];
+		final long[] starts = new long[files.length];
+		final FileMetrics metrics = FileManager.metrics();
+
+		for (int i = 0; i < files.length; i++) {
+			starts[i] = System.nanoTime();
+			results[i] = files[i].checkSave();
+			if (results[i] != null)
+				continue;
+			try {
+				temporals[i] = files[i].writeTemporal(buffered);
+			} catch (IOException e) {
+				FileManager.error(FileErrorMessage.SAVING, files[i].getName(), e);
+				results[i] = FileOperationResult.IOERROR;
+			}
+		}
+
+		// The disk can handle many forces at the same time much better than one
+		// after another
+		IntStream.range(0, files.length).parallel().filter(i -> temporals[i] != null).forEach(i -> {
+			try {
+				force(temporals[i]);
+			} catch (IOException e) {
+				FileManager.error(FileErrorMessage.SAVING, files[i].getName(), e);
+				results[i] = FileOperationResult.IOERROR;
+				discard(temporals[i]);
+				temporals[i] = null;
+			}
+		});
+
+		final Set<File> directories = new LinkedHashSet<File>();
+		for (int i = 0; i < files.length; i++) {
+			if (temporals[i] == null)
+				continue;
+			try {
+				replace(temporals[i], files[i].getFile());
+				directories.add(files[i].getFile().getAbsoluteFile().getParentFile());
+			} catch (IOException e) {
+				FileManager.error(FileErrorMessage.SAVING, files[i].getName(), e);
+				results[i] = FileOperationResult.IOERROR;
+				discard(temporals[i]);
+				temporals[i] = null;
+			}
+		}
+		for (File directory : directories)
+			syncDirectory(directory);
+
+		for (int i = 0; i < files.length; i++) {
+			if (temporals[i] != null) {
+				files[i].saved();
+				results[i] = FileOperationResult.SAVED;
+			}
+			files[i].recordSave(metrics, starts[i], results[i]);
+		}
+		return new ArrayList<FileOperationResult>(Arrays.asList(results));
+	}
+
+}
@@ -2,6 +2,7 @@ package me.ansuz.amrv.files;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFileFormat.Type;
@@ -10,6 +11,8 @@ import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
+import me.ansuz.amrv.files.FileManager.FileErrorMessage;
+
 public class AudioFile extends BaseFile{
 
 	private AudioFileFormat audio;
@@ -31,10 +34,7 @@ public class AudioFile extends BaseFile{
 			stream = AudioSystem.getAudioInputStream(file);
 			return true;
 		} catch (UnsupportedAudioFileException | IOException x) {
-			if (FileManager.isDebugEnabled())
-				System.err.println(
-						FileManager.WARNING + "file " + file.getName() + " got an error while reading the file");
-			x.printStackTrace();
+			FileManager.error(FileErrorMessage.READING, file.getName(), x);
 			return false;
 		}
 		
@@ -69,6 +69,7 @@ public class AudioFile extends BaseFile{
 	 */
 	public void setType(Type type) {
 		this.type = type;
+		this.markDirty();
 	}
 	
 	/**
@@ -82,6 +83,18 @@ public class AudioFile extends BaseFile{
 		return this.stream.getFormat();
 	}
 	
+	/**
+	 * Obtains the properties of the file, like its author or duration, without
+	 * considering the file modified
+	 * 
+	 * @see AudioFileFormat#properties()
+	 * 
+	 * @return the properties that can not be modified
+	 */
+	public Map<String, Object> getProperties() {
+		return audio.properties();
+	}
+	
 	/**
 	 * Replaces the audio that will be written onto the file when you save it
 	 * 
@@ -90,35 +103,41 @@ public class AudioFile extends BaseFile{
 	public void setAudio(AudioInputStream stream) {
 		this.stream = stream;
 		this.format = stream.getFormat();
+		this.markDirty();
 	}
 	
 	/**
 	 * Obtains the AudioInputStream that is currently holding the file, if
-	 * there was an error obtaining it this will return a null value
+	 * there was an error obtaining it this will return a null value, as the stream
+	 * can be modified the file is considered modified after this, use
+	 * <code>getLength()</code>, <code>getFormat()</code> or
+	 * <code>getProperties()</code> to only read about it
 	 * 
 	 * @return the audio as an AudioInputStream
 	 */
 	public AudioInputStream getAudio() {
+		this.markDirty();
 		return stream;
 	}
 	
 	@Override
 	protected void buffersave() throws IOException {
-		AudioSystem.write(stream, type, file);
+		AudioSystem.write(stream, type, this.saveTarget());
 	}
 
 	@Override
 	protected void writersave() throws IOException {
-		AudioSystem.write(stream, AudioFileFormat.Type.AU, file);
+		AudioSystem.write(stream, AudioFileFormat.Type.AU, this.saveTarget());
 	}
 
 	@Override
 	public void clear() {
 		audio.properties().clear();
+		this.markDirty();
 		try {
 			stream.close();
 		} catch (IOException x) {
-			x.printStackTrace();
+			FileManager.error(FileErrorMessage.OTHER, file.getName(), x);
 		}
 	}
 
@@ -2,19 +2,47 @@ package me.ansuz.amrv.files;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import me.ansuz.amrv.files.FileManager.FileErrorMessage;
+import me.ansuz.amrv.files.FileMetrics.Operation;
 import me.ansuz.amrv.files.FileManager.FileOperationMessage;
 
 public abstract class BaseFile {
 
 	public enum FileOperationResult {
-		NOTHING, SAVED, CLEARED, IOERROR, BLOCKED, DONE
+		NOTHING, SAVED, UNCHANGED, CLEARED, IOERROR, BLOCKED, DONE
 	}
 
 	protected FileOperationResult result;
 	protected final File file;
 	protected Long seed = null;
+	// If the data holded differs from the contents of the file, concurrent files
+	// mark it from many threads
+	private volatile boolean dirty;
+	// Attributes of the file the last time it was loaded or saved
+	private FileStamp stamp;
+	private boolean contentCheck;
+	// If the contents were loaded or replaced, lazy files are not until used
+	private volatile boolean loaded;
+	// If the contents were tried to be loaded, a lazy file that failed to load
+	// is not read again until reloaded
+	private boolean attempted;
+	// If the reload being done must keep data modified while it runs, and if it
+	// did, only used holding the monitor
+	private boolean refreshing;
+	private boolean kept;
+	private boolean atomic;
+	// Temporal file being written while saving atomically
+	private File target;
+	// Bytes written by the last save or -1 if the file did not count them
+	private long written;
+	// Bytes read by the last reload or -1 if the file did not count them
+	private long read;
+	// Asynchronous save that is waiting to start, so the next ones can join it
+	private final AtomicReference<CompletableFuture<FileOperationResult>> pendingSave = new AtomicReference<>();
 
 	/**
 	 * Creates a base for the file.
@@ -25,9 +53,29 @@ public abstract class BaseFile {
 	 * @param file to be created with
 	 */
 	protected BaseFile(File file) {
+		this(file, true);
+	}
+
+	/**
+	 * Creates a base for the file.
+	 *
+	 * <p>
+	 * Subclasses that need their own fields to be ready before the file is read
+	 * should pass <code>false</code> and call <code>reload()</code> at the end of
+	 * their constructor, so the file is only read once.
+	 *
+	 * <p>
+	 * A file that is never loaded is lazy, its contents are loaded the first time
+	 * they are used through <code>ensureLoaded()</code>
+	 *
+	 * @param file to be created with
+	 * @param load if the contents of the file should be loaded right now
+	 */
+	protected BaseFile(File file, boolean load) {
 		this.file = file;
 		this.result = FileOperationResult.NOTHING;
-		this.reload();
+		if (load)
+			this.reload();
 	}
 
 	/**
@@ -240,18 +288,179 @@ public abstract class BaseFile {
 	 * If the file is updated via external process you must call this method to be
 	 * able to obtain the new contents of the file.
 	 *
+	 * <p>
+	 * The file is only read again if its modification time, size or identity
+	 * changed since it was last loaded or saved, or if the data holded was
+	 * modified, so calling this before every read is cheap. Use
+	 * <code>forceReload()</code> to always read the file.
+	 *
+	 * @return true if the file was reloaded without erros or did not need to, a
+	 *         false if something went wrong
+	 */
+	public boolean reload() {
+		return this.reload(false) != FileOperationResult.IOERROR;
+	}
+
+	/**
+	 * Reloads the contents of the file even if the file did not change since it
+	 * was last loaded or saved.
+	 *
+	 * @see #reload()
+	 *
 	 * @return true if the file was reloaded without erros, a false if something
 	 *         went wrong
 	 */
-	public boolean reload() {
-		if (this.canRead())
-			return reloadProcess();
-		else {
+	public boolean forceReload() {
+		return this.reload(true) != FileOperationResult.IOERROR;
+	}
+
+	/**
+	 * Reloads the file if needed and records the operation on the metrics
+	 *
+	 * @param force if the file must be read even if it did not change
+	 *
+	 * @return DONE if the file was read, UNCHANGED if it did not need to be or
+	 *         IOERROR if it could not be read
+	 */
+	private synchronized FileOperationResult reload(final boolean force) {
+		// Even if it fails a lazy file is only loaded once, the error is already
+		// reported and the next reload will try again
+		attempted = true;
+		final FileMetrics metrics = FileManager.metrics();
+		final long start = metrics == null ? 0 : System.nanoTime();
+		final FileOperationResult result = this.reloading(force);
+		// Only set once the data is complete, as other threads stop waiting for it
+		if (result != FileOperationResult.IOERROR)
+			loaded = true;
+		if (metrics != null)
+			metrics.record(getClass(), Operation.RELOAD, start,
+					result == FileOperationResult.IOERROR ? 0 : Math.max(read, 0), result);
+		return result;
+	}
+
+	private FileOperationResult reloading(final boolean force) {
+		read = 0;
+		if (!this.canRead()) {
 			FileManager.warn(FileOperationMessage.CANT_READ, file.getName());
-			return false;
+			return FileOperationResult.IOERROR;
+		}
+		final FileStamp current = FileStamp.of(file);
+		if (!force && !dirty && current != null && current.matches(stamp))
+			try {
+				if (!contentCheck || FileStamp.hash(file) == stamp.hash())
+					return FileOperationResult.UNCHANGED;
+			} catch (IOException e) {
+				// The file will be loaded anyways so it reports the error
+			}
+		// The attributes are taken before reading, so if the file changes while
+		// being read the next reload will read it again
+		read = -1;
+		if (!reloadProcess())
+			return FileOperationResult.IOERROR;
+		if (read < 0)
+			read = current != null ? current.size() : file.length();
+		if (kept)
+			return FileOperationResult.UNCHANGED;
+		dirty = false;
+		stamp = this.hashed(current);
+		this.reloaded();
+		return FileOperationResult.DONE;
+	}
+
+	/**
+	 * Adds the hash of the contents to the stamp if the content check is enabled
+	 *
+	 * @return the same stamp or null if the hash could not be calculated
+	 */
+	private FileStamp hashed(final FileStamp stamp) {
+		if (stamp == null || !contentCheck)
+			return stamp;
+		try {
+			return stamp.withHash(file);
+		} catch (IOException e) {
+			return null;
 		}
 	}
 
+	/**
+	 * Enables or disables the check of the contents of the file when reloading.
+	 *
+	 * <p>
+	 * Some file systems only store the modification time in seconds, so a file
+	 * changed twice in the same second keeping its size would not be reloaded,
+	 * with this enabled a hash of the file is compared before skipping the reload,
+	 * which is still cheaper than loading the file but needs to read it.
+	 *
+	 * @param enabled if the contents should be checked, disabled by default
+	 */
+	public void setContentCheckEnabled(final boolean enabled) {
+		this.contentCheck = enabled;
+		this.stamp = null;
+	}
+
+	/**
+	 * Checks if the contents of the file are compared when reloading.
+	 *
+	 * @see #setContentCheckEnabled(boolean)
+	 *
+	 * @return true if the content check is enabled
+	 */
+	public boolean isContentCheckEnabled() {
+		return contentCheck;
+	}
+
+	/**
+	 * Checks if the data holded has been modified since it was last loaded or
+	 * saved, saving a file that is not dirty does nothing.
+	 *
+	 * @return true if the data must be saved to be kept on the file
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Checks if the contents of the file were loaded, a file constructed as lazy
+	 * is not loaded until its data is used or <code>reload()</code> is called.
+	 *
+	 * @see FileConstructor#lazy()
+	 *
+	 * @return true if the data holded comes from the file or replaced it
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Loads the contents of the file if they were never loaded, every method that
+	 * reads or modifies part of the data must call this before using it, so a
+	 * lazy file is read only once and on the first use.
+	 */
+	protected final void ensureLoaded() {
+		if (!loaded)
+			synchronized (this) {
+				// Also stops the methods used while loading from loading again
+				if (!loaded && !attempted)
+					this.reload(false);
+			}
+	}
+
+	/**
+	 * Marks the file as loaded without reading it, methods that replace the whole
+	 * data must call this so a lazy file is not read just to be overwritten.
+	 */
+	protected final void markLoaded() {
+		loaded = true;
+	}
+
+	/**
+	 * Marks the data holded as modified so the next save writes it to the file,
+	 * every method that modifies the data must call this.
+	 */
+	protected final void markDirty() {
+		dirty = true;
+	}
+
 	/**
 	 * Starts the sub load process for the file, althrough this is only for
 	 * convenience, use <code>reload()</code> instead as will check for permissions
@@ -294,31 +503,258 @@ public abstract class BaseFile {
 	 * independently of the buffer capability and whenever to use it or not depends
 	 * on the subclass that inherits the saving with and without buffers.
 	 *
+	 * <p>
+	 * If the data was not modified since it was loaded or saved the file is not
+	 * touched and the result will be <code>UNCHANGED</code>
+	 *
 	 * @param buffered if the save method should use buffers
 	 *
-	 * @return true if the file was saved, false otherwise
+	 * @return true if the file was saved or did not need to, false otherwise
 	 */
 	public final boolean save(final boolean buffered) {
+		final FileMetrics metrics = FileManager.metrics();
+		final long start = metrics == null ? 0 : System.nanoTime();
+		this.recordSave(metrics, start, this.saving(buffered));
+		return result == FileOperationResult.SAVED || result == FileOperationResult.UNCHANGED;
+	}
+
+	private FileOperationResult saving(final boolean buffered) {
+		final FileOperationResult check = this.checkSave();
+		if (check != null)
+			return check;
+		try {
+			if (atomic) {
+				final File temporal = this.writeTemporal(buffered);
+				try {
+					AtomicSave.force(temporal);
+					AtomicSave.replace(temporal, file);
+				} catch (IOException e) {
+					temporal.delete();
+					throw e;
+				}
+				AtomicSave.syncDirectory(file.getAbsoluteFile().getParentFile());
+			} else
+				this.write(file, buffered);
+			this.saved();
+			return FileOperationResult.SAVED;
+		} catch (IOException e) {
+			FileManager.error(FileErrorMessage.SAVING, file.getName(), e);
+			return FileOperationResult.IOERROR;
+		}
+	}
+
+	/**
+	 * Checks if the file has to be saved and can be
+	 *
+	 * @return UNCHANGED or BLOCKED if the file must not be written or null if it
+	 *         must
+	 */
+	FileOperationResult checkSave() {
+		if (!dirty)
+			return FileOperationResult.UNCHANGED;
 		if (!this.canWrite()) {
-			this.result = FileOperationResult.BLOCKED;
 			FileManager.warn(FileOperationMessage.CANT_SAVE, file.getName());
-			return false;
+			return FileOperationResult.BLOCKED;
 		}
+		return null;
+	}
+
+	/**
+	 * Writes the data to a new temporal file next to the file
+	 *
+	 * @param buffered if the save method should use buffers
+	 *
+	 * @return the temporal file, not forced yet
+	 *
+	 * @throws IOException if the temporal file cant be written, it is already
+	 *                     deleted then
+	 */
+	File writeTemporal(final boolean buffered) throws IOException {
+		final File temporal = AtomicSave.temporal(file);
+		target = temporal;
 		try {
-			if (buffered)
-				this.buffersave();
-			else
-				this.writersave();
-			this.result = FileOperationResult.SAVED;
-			return true;
+			this.write(temporal, buffered);
+			return temporal;
+		} catch (IOException e) {
+			temporal.delete();
+			throw e;
+		} finally {
+			target = null;
+		}
+	}
+
+	/**
+	 * Writes the data counting the bytes written, if the file does not count
+	 * them it is considered to be written whole
+	 *
+	 * @param target   file being written
+	 * @param buffered if the save method should use buffers
+	 *
+	 * @throws IOException if the file cant be written
+	 */
+	private void write(final File target, final boolean buffered) throws IOException {
+		written = -1;
+		if (buffered)
+			this.buffersave();
+		else
+			this.writersave();
+		if (written < 0)
+			written = target.length();
+	}
+
+	/**
+	 * Counts bytes written by the save being done, the files that write only part
+	 * of the data or write other files too must call this with every byte they
+	 * write, the others are considered to write the whole file.
+	 *
+	 * @param bytes written to the disk
+	 */
+	protected final void wrote(final long bytes) {
+		written = Math.max(written, 0) + bytes;
+	}
+
+	/**
+	 * Counts bytes read by the reload being done, the files that read only part
+	 * of the file or read other files too must call this with every byte they
+	 * read, the others are considered to read the whole file.
+	 *
+	 * @param bytes read from the disk
+	 */
+	protected final void readBytes(final long bytes) {
+		read = Math.max(read, 0) + bytes;
+	}
+
+	/**
+	 * Checks if the file on the disk is still the one that was last loaded or
+	 * saved, comparing its modification time, size and key, and its contents if
+	 * the content check is enabled
+	 *
+	 * @return false if the file was changed by someone else or it is not known
+	 */
+	boolean isUnchanged() {
+		final FileStamp current = FileStamp.of(file);
+		if (current == null || !current.matches(stamp))
+			return false;
+		try {
+			return !contentCheck || FileStamp.hash(file) == stamp.hash();
 		} catch (IOException e) {
-			this.result = FileOperationResult.IOERROR;
-			FileManager.error(FileErrorMessage.SAVING, file.getName());
-			e.printStackTrace();
 			return false;
 		}
 	}
 
+	/**
+	 * Marks the data as saved after being written to the file
+	 */
+	void saved() {
+		this.dirty = false;
+		this.stamp = this.hashed(FileStamp.of(file));
+	}
+
+	/**
+	 * Reloads the file after it changed on the disk unless the data holded was
+	 * modified, so no change is lost. It holds the monitor of the file, so the
+	 * check and the reload can not be interleaved with changes done holding it,
+	 * concurrent files check again before replacing the data as their changes do
+	 * not hold it.
+	 *
+	 * @return DONE if the file was read, UNCHANGED if it did not need to be or
+	 *         was never loaded, IOERROR if it could not be read or null if the
+	 *         data holded was modified so it was not replaced
+	 */
+	synchronized FileOperationResult refresh() {
+		if (!loaded)
+			return FileOperationResult.UNCHANGED;
+		if (dirty)
+			return null;
+		refreshing = true;
+		kept = false;
+		try {
+			final FileOperationResult result = this.reload(false);
+			return kept ? null : result;
+		} finally {
+			refreshing = false;
+			kept = false;
+		}
+	}
+
+	/**
+	 * Checks if the data must be kept instead of replaced by the reload being
+	 * done, for concurrent files that were modified while reloading, and keeps it
+	 * if so
+	 *
+	 * @param modified if the data was modified since the file was last saved or
+	 *                 reloaded
+	 *
+	 * @return true if the reload must not replace the data
+	 */
+	final boolean keep(final boolean modified) {
+		if (refreshing && modified)
+			kept = true;
+		return kept;
+	}
+
+	/**
+	 * Called after the data was replaced with the contents of the file and marked
+	 * as not modified, concurrent files mark it again if it was modified after
+	 * being replaced
+	 */
+	void reloaded() {
+	}
+
+	/**
+	 * Keeps the result of a save and records it on the metrics
+	 *
+	 * @param metrics where the save is recorded, read once when the save started,
+	 *                or null if they were disabled then
+	 * @param start   moment when the save started
+	 * @param result  of the save
+	 */
+	void recordSave(final FileMetrics metrics, final long start, final FileOperationResult result) {
+		this.result = result;
+		if (metrics != null)
+			metrics.record(getClass(), Operation.SAVE, start,
+					result == FileOperationResult.SAVED ? written : 0, result);
+	}
+
+	/**
+	 * Makes every save write the data to a temporal file on the same directory,
+	 * force it to the disk and rename it over the file, so if the program or the
+	 * system crash while saving the file keeps either its old or its new
+	 * contents, never a half written one.
+	 *
+	 * <p>
+	 * Forcing the file to the disk is slow, to save many files use
+	 * <code>FileManager.saveAll()</code> which shares that cost between them.
+	 *
+	 * @param enabled if saves should be atomic, disabled by default
+	 */
+	public void setAtomicSaveEnabled(final boolean enabled) {
+		this.atomic = enabled;
+	}
+
+	/**
+	 * Checks if the file is saved atomically.
+	 *
+	 * @see #setAtomicSaveEnabled(boolean)
+	 *
+	 * @return true if saves are atomic
+	 */
+	public boolean isAtomicSaveEnabled() {
+		return atomic;
+	}
+
+	/**
+	 * Gets the file where the data must be written when saving, usually the file
+	 * itself but a temporal file while saving atomically, subclasses must always
+	 * write to this one.
+	 *
+	 * @return the file to be written
+	 */
+	protected final File saveTarget() {
+		final File temporal = target;
+		return temporal == null ? file : temporal;
+	}
+
 	/**
 	 * Triggers the delete process for the file right now, however, you will still
 	 * be able to operate with the data that was already loaded but using the
@@ -364,18 +800,119 @@ public abstract class BaseFile {
 	 *         on the exit
 	 */
 	public final boolean delete(final boolean onExit) {
+		final FileMetrics metrics = FileManager.metrics();
+		final long start = metrics == null ? 0 : System.nanoTime();
+		this.result = this.deleting(onExit);
+		if (metrics != null)
+			metrics.record(getClass(), Operation.DELETE, start, 0, result);
+		return result == FileOperationResult.DONE;
+	}
+
+	private FileOperationResult deleting(final boolean onExit) {
 		try {
 			if (onExit)
 				file.deleteOnExit();
 			else
 				file.delete();
-			this.result = FileOperationResult.DONE;
-			return true;
+			// The data holded is now the only copy so saving must write it again, a
+			// lazy file that was never loaded holds nothing to be written
+			this.dirty = loaded;
+			this.stamp = null;
+			return FileOperationResult.DONE;
 		} catch (Exception e) {
-			this.result = FileOperationResult.IOERROR;
-			FileManager.error(FileErrorMessage.DELETING, file.getName());
-			e.printStackTrace();
-			return false;
+			FileManager.error(FileErrorMessage.DELETING, file.getName(), e);
+			return FileOperationResult.IOERROR;
+		}
+	}
+
+	/**
+	 * Saves the file like <code>save()</code> but on the executor of the
+	 * FileManager, so the calling thread does not wait for the disk.
+	 *
+	 * <p>
+	 * If a previous asynchronous save of this file did not start writing yet, no
+	 * new save is queued and the same future is returned, as that save will
+	 * write the latest data anyways.
+	 *
+	 * <p>
+	 * The asynchronous operations of the same file run one after another, the
+	 * data must not be modified while they run unless the file is synchronized.
+	 *
+	 * @see FileManager#setExecutor(java.util.concurrent.Executor)
+	 *
+	 * @return a future completed with the result of the save
+	 */
+	public CompletableFuture<FileOperationResult> saveAsync() {
+		while (true) {
+			final CompletableFuture<FileOperationResult> pending = pendingSave.get();
+			if (pending != null)
+				return pending;
+			final CompletableFuture<FileOperationResult> future = new CompletableFuture<>();
+			if (pendingSave.compareAndSet(null, future)) {
+				this.submit(future, () -> {
+					// From now on the data may be already written so new saves need a new write
+					pendingSave.compareAndSet(future, null);
+					this.save(true);
+					return result;
+				});
+				return future;
+			}
+		}
+	}
+
+	/**
+	 * Reloads the file like <code>reload()</code> but on the executor of the
+	 * FileManager.
+	 *
+	 * @see #saveAsync()
+	 *
+	 * @return a future completed with DONE if the file was read, UNCHANGED if it
+	 *         did not need to or IOERROR if it could not be read
+	 */
+	public CompletableFuture<FileOperationResult> reloadAsync() {
+		final CompletableFuture<FileOperationResult> future = new CompletableFuture<>();
+		this.submit(future, () -> this.reload(false));
+		return future;
+	}
+
+	/**
+	 * Deletes the file like <code>delete()</code> but on the executor of the
+	 * FileManager.
+	 *
+	 * @see #saveAsync()
+	 *
+	 * @return a future completed with DONE if the file was deleted or IOERROR if
+	 *         it could not be
+	 */
+	public CompletableFuture<FileOperationResult> deleteAsync() {
+		final CompletableFuture<FileOperationResult> future = new CompletableFuture<>();
+		this.submit(future, () -> {
+			this.delete(false);
+			return result;
+		});
+		return future;
+	}
+
+	/**
+	 * Runs the operation on the executor holding the lock of the file and
+	 * completes the future with its result
+	 */
+	private void submit(final CompletableFuture<FileOperationResult> future,
+			final Supplier<FileOperationResult> operation) {
+		try {
+			FileManager.executor().execute(() -> {
+				try {
+					synchronized (this) {
+						future.complete(operation.get());
+					}
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RuntimeException e) {
+			// The executor rejected the operation
+			pendingSave.compareAndSet(future, null);
+			future.completeExceptionally(e);
 		}
 	}
 
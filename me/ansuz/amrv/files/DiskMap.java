@@ -0,0 +1,586 @@
+package me.ansuz.amrv.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Map of strings that lives on a file instead of the heap, the entries are on
+ * an open addressing hash table mapped into memory so looking for a key only
+ * reads the slots it probes and the records they point to, and the memory used
+ * by the heap does not depend on the amount of entries.
+ *
+ * <p>
+ * The file starts with a header, followed by the table of slots, each one with
+ * the position of a record and the hash of its key, and then the records, the
+ * UTF-8 key and value prefixed by their lengths. Records are never modified,
+ * changing a value appends a new record and the old one is left as garbage
+ * until the file is rebuilt, which happens when the table is too full or there
+ * is more garbage than records.
+ *
+ * <p>
+ * The header also keeps the attributes of the text file the map was last saved
+ * to, so a map that did not change since then does not need to be imported
+ * again. Like a HashMap it is not thread safe, and the entries can not be
+ * modified while iterating other than through the iterator or the entries.
+ *
+ * @author Ansuz
+ *
+ */
+final class DiskMap extends AbstractMap<String, String> {
+
+	private static final int MAGIC = 0x4D415048;
+	private static final int VERSION = 1;
+	private static final int HEADER = 128;
+	private static final int SLOT = 16;
+	private static final int INITIAL_CAPACITY = 1 << 10;
+	private static final int MAXIMUM_CAPACITY = 1 << 26;
+	// Records are mapped in segments of this size, a record never crosses them
+	private static final int SEGMENT = 1 << 24;
+	private static final long TOMBSTONE = -1;
+
+	// Positions of the header fields
+	private static final int CAPACITY = 8;
+	private static final int CLEAN = 12;
+	private static final int SIZE = 16;
+	private static final int TOMBSTONES = 24;
+	private static final int END = 32;
+	private static final int GARBAGE = 40;
+	private static final int SOURCE_MODIFIED = 48;
+	private static final int SOURCE_SIZE = 56;
+	private static final int SOURCE_KEY = 64;
+
+	// Garbage below this is never worth rebuilding the file when saving
+	private static final long GARBAGE_MINIMUM = 1L << 20;
+
+	private File file;
+	// Header and slots
+	private MappedByteBuffer table;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private int mask;
+	private long start;
+
+	/**
+	 * @param main text file the map belongs to
+	 */
+	DiskMap(File main) {
+		this.file = new File(main.getAbsoluteFile().getParentFile(), main.getName() + ".index");
+	}
+
+	/**
+	 * @return the file that holds the map
+	 */
+	File file() {
+		return file;
+	}
+
+	/**
+	 * Opens the map if its file was last saved to the source as it is now
+	 *
+	 * @param source text file of the map
+	 *
+	 * @return true if the map holds the entries of the source and can be used,
+	 *         false if it must be imported again
+	 *
+	 * @throws IOException if the attributes of the source cant be read
+	 */
+	boolean open(File source) throws IOException {
+		if (!file.isFile() || file.length() < HEADER)
+			return false;
+		try {
+			this.map(file);
+		} catch (IOException e) {
+			// A broken index is imported again
+			return false;
+		}
+		if (table.getInt(0) != MAGIC || table.getInt(4) != VERSION || table.getInt(CLEAN) == 0)
+			return false;
+		final BasicFileAttributes attributes = Files.readAttributes(source.toPath(),
+				BasicFileAttributes.class);
+		return table.getLong(SOURCE_MODIFIED) == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+				&& table.getLong(SOURCE_SIZE) == attributes.size()
+				&& table.getInt(SOURCE_KEY) == String.valueOf(attributes.fileKey()).hashCode();
+	}
+
+	/**
+	 * Marks the map as holding the same entries as the source, forcing the map to
+	 * the disk so it can be opened later without importing the source
+	 *
+	 * @param source text file the map was saved to
+	 *
+	 * @throws IOException if the attributes of the source cant be read
+	 */
+	void saved(File source) throws IOException {
+		final BasicFileAttributes attributes = Files.readAttributes(source.toPath(), BasicFileAttributes.class);
+		final long garbage = table.getLong(GARBAGE);
+		if (garbage > GARBAGE_MINIMUM && garbage > table.getLong(END) - start - garbage)
+			this.rebuild(this.capacity());
+		table.putLong(SOURCE_MODIFIED, attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+		table.putLong(SOURCE_SIZE, attributes.size());
+		table.putInt(SOURCE_KEY, String.valueOf(attributes.fileKey()).hashCode());
+		for (MappedByteBuffer segment : segments)
+			segment.force();
+		table.force();
+		table.putInt(CLEAN, 1);
+		table.force();
+	}
+
+	/**
+	 * Maps the header and the slots of the given file
+	 */
+	private void map(File source) throws IOException {
+		this.unmap();
+		try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER);
+			channel.read(header, 0);
+			final int capacity = header.getInt(CAPACITY);
+			if (Integer.bitCount(capacity) != 1 || capacity > MAXIMUM_CAPACITY)
+				throw new IOException("Broken index " + file.getName());
+			table = channel.map(MapMode.READ_WRITE, 0, HEADER + (long) capacity * SLOT);
+			mask = capacity - 1;
+			start = HEADER + (long) capacity * SLOT;
+		}
+	}
+
+	/**
+	 * Releases the mappings of the file so it can be replaced
+	 */
+	private void unmap() {
+		MappedRegions.unmap(table);
+		table = null;
+		for (MappedByteBuffer segment : segments)
+			MappedRegions.unmap(segment);
+		segments.clear();
+	}
+
+	/**
+	 * Creates an empty map file with the given capacity
+	 */
+	private static void create(File target, int capacity) throws IOException {
+		try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putInt(0, MAGIC).putInt(4, VERSION).putInt(CAPACITY, capacity).putLong(END,
+					HEADER + (long) capacity * SLOT);
+			channel.write(header, 0);
+			// The slots are zeroed by the system as the file grows
+			channel.write(ByteBuffer.allocate(1), HEADER + (long) capacity * SLOT - 1);
+		}
+	}
+
+	private int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Gets the segment that holds the given position, mapping it if needed
+	 */
+	private MappedByteBuffer segment(long position) {
+		final int index = (int) ((position - start) / SEGMENT);
+		while (segments.size() <= index)
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				segments.add(channel.map(MapMode.READ_WRITE, start + (long) segments.size() * SEGMENT, SEGMENT));
+			} catch (IOException e) {
+				throw new IllegalStateException("Cant map the index " + file.getName(), e);
+			}
+		return segments.get(index);
+	}
+
+	private static int offset(long position, long start) {
+		return (int) ((position - start) % SEGMENT);
+	}
+
+	private static int hash(String key) {
+		final int hash = key.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+
+	private long slot(int index) {
+		return HEADER + (long) index * SLOT;
+	}
+
+	private long record(int index) {
+		return table.getLong((int) this.slot(index));
+	}
+
+	/**
+	 * Finds the slot of the key
+	 *
+	 * @return the index of the slot holding the key, or the complement of the
+	 *         first free slot where it should be added
+	 */
+	private int find(byte[] key, int hash) {
+		int free = -1;
+		for (int index = hash & mask;; index = (index + 1) & mask) {
+			final long record = this.record(index);
+			if (record == 0)
+				return ~(free < 0 ? index : free);
+			if (record == TOMBSTONE) {
+				if (free < 0)
+					free = index;
+			} else if (table.getInt((int) this.slot(index) + 8) == hash && this.matches(record, key))
+				return index;
+		}
+	}
+
+	/**
+	 * Compares the key of the record without reading it into a string
+	 */
+	private boolean matches(long record, byte[] key) {
+		final MappedByteBuffer segment = this.segment(record);
+		final int offset = offset(record, start);
+		if (segment.getInt(offset) != key.length)
+			return false;
+		for (int i = 0; i < key.length; i++)
+			if (segment.get(offset + 4 + i) != key[i])
+				return false;
+		return true;
+	}
+
+	private String key(long record) {
+		final MappedByteBuffer segment = this.segment(record);
+		return string(segment, offset(record, start));
+	}
+
+	private String value(long record) {
+		final MappedByteBuffer segment = this.segment(record);
+		final int offset = offset(record, start);
+		return string(segment, offset + 4 + segment.getInt(offset));
+	}
+
+	private static String string(MappedByteBuffer segment, int offset) {
+		final byte[] bytes = new byte[segment.getInt(offset)];
+		final ByteBuffer view = segment.duplicate();
+		view.position(offset + 4);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Appends a record at the end of the records
+	 *
+	 * @return the position of the record
+	 */
+	private long append(byte[] key, byte[] value) {
+		final int length = 8 + key.length + value.length;
+		long end = table.getLong(END);
+		if (offset(end, start) + length > SEGMENT) {
+			// The rest of the segment is left empty so the record is not split
+			final long next = end + SEGMENT - offset(end, start);
+			table.putLong(GARBAGE, table.getLong(GARBAGE) + next - end);
+			end = next;
+		}
+		final ByteBuffer view = this.segment(end).duplicate();
+		view.position(offset(end, start));
+		view.putInt(key.length).put(key).putInt(value.length).put(value);
+		table.putLong(END, end + length);
+		return end;
+	}
+
+	private static int length(MappedByteBuffer segment, int offset) {
+		final int key = segment.getInt(offset);
+		return 8 + key + segment.getInt(offset + 4 + key);
+	}
+
+	private void modified() {
+		if (table.getInt(CLEAN) != 0)
+			table.putInt(CLEAN, 0);
+	}
+
+	@Override
+	public int size() {
+		return (int) Math.min(Integer.MAX_VALUE, table.getLong(SIZE));
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return this.get(key) != null;
+	}
+
+	@Override
+	public String get(Object key) {
+		if (!(key instanceof String))
+			return null;
+		final int index = this.find(((String) key).getBytes(StandardCharsets.UTF_8), hash((String) key));
+		return index < 0 ? null : this.value(this.record(index));
+	}
+
+	@Override
+	public String put(String key, String value) {
+		if (key == null || value == null)
+			throw new NullPointerException("Disk maps can not hold null keys or values");
+		final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		final byte[] data = value.getBytes(StandardCharsets.UTF_8);
+		// Checked before the table is touched, so a rejected entry changes nothing
+		if (8L + bytes.length + data.length > SEGMENT)
+			throw new IllegalArgumentException("Entries of disk maps can not be bigger than " + SEGMENT + " bytes");
+		final int hash = hash(key);
+		int index = this.find(bytes, hash);
+		String previous = null;
+		if (index >= 0) {
+			final long old = this.record(index);
+			previous = this.value(old);
+			table.putLong(GARBAGE, table.getLong(GARBAGE) + length(this.segment(old), offset(old, start)));
+		} else {
+			final long size = table.getLong(SIZE);
+			final long tombstones = table.getLong(TOMBSTONES);
+			if ((size + tombstones + 1) * 4 > (long) this.capacity() * 3) {
+				this.rebuild(size * 2 + 2 > this.capacity() ? this.capacity() * 2 : this.capacity());
+				index = this.find(bytes, hash);
+			}
+			index = ~index;
+			if (this.record(index) == TOMBSTONE)
+				table.putLong(TOMBSTONES, table.getLong(TOMBSTONES) - 1);
+			table.putLong(SIZE, table.getLong(SIZE) + 1);
+		}
+		this.modified();
+		final long record = this.append(bytes, data);
+		table.putLong((int) this.slot(index), record);
+		table.putInt((int) this.slot(index) + 8, hash);
+		return previous;
+	}
+
+	@Override
+	public String remove(Object key) {
+		if (!(key instanceof String))
+			return null;
+		final int index = this.find(((String) key).getBytes(StandardCharsets.UTF_8), hash((String) key));
+		return index < 0 ? null : this.removeSlot(index);
+	}
+
+	private String removeSlot(int index) {
+		final long record = this.record(index);
+		final String previous = this.value(record);
+		this.modified();
+		table.putLong((int) this.slot(index), TOMBSTONE);
+		table.putLong(SIZE, table.getLong(SIZE) - 1);
+		table.putLong(TOMBSTONES, table.getLong(TOMBSTONES) + 1);
+		table.putLong(GARBAGE, table.getLong(GARBAGE) + length(this.segment(record), offset(record, start)));
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		try {
+			this.unmap();
+			create(file, INITIAL_CAPACITY);
+			this.map(file);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cant create the index " + file.getName(), e);
+		}
+	}
+
+	/**
+	 * Copies every entry to a new file with the given capacity and replaces the
+	 * file with it, dropping the garbage and the tombstones
+	 */
+	private void rebuild(int capacity) {
+		if (capacity > MAXIMUM_CAPACITY)
+			throw new IllegalStateException(
+					"Disk maps can not hold more than " + (MAXIMUM_CAPACITY / 4 * 3) + " entries");
+		try {
+			final File temporal = AtomicSave.temporal(file);
+			final DiskMap copy = new DiskMap(file);
+			copy.file = temporal;
+			try {
+				create(temporal, capacity);
+				copy.map(temporal);
+				for (int i = 0; i <= mask; i++) {
+					final long record = this.record(i);
+					if (record == 0 || record == TOMBSTONE)
+						continue;
+					final MappedByteBuffer segment = this.segment(record);
+					final int offset = offset(record, start);
+					final byte[] bytes = new byte[length(segment, offset)];
+					final ByteBuffer view = segment.duplicate();
+					view.position(offset);
+					view.get(bytes);
+					copy.copy(bytes, table.getInt((int) this.slot(i) + 8));
+				}
+			} catch (IOException | RuntimeException e) {
+				copy.unmap();
+				temporal.delete();
+				throw e;
+			}
+			// Neither file can be replaced while it is mapped on some systems
+			copy.unmap();
+			this.unmap();
+			try {
+				AtomicSave.replace(temporal, file);
+			} catch (IOException e) {
+				temporal.delete();
+				this.map(file);
+				throw e;
+			}
+			this.map(file);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cant rebuild the index " + file.getName(), e);
+		}
+	}
+
+	/**
+	 * Adds a raw record to an empty slot, only used while rebuilding
+	 */
+	private void copy(byte[] record, int hash) {
+		int index = hash & mask;
+		while (this.record(index) != 0)
+			index = (index + 1) & mask;
+		long end = table.getLong(END);
+		if (offset(end, start) + record.length > SEGMENT) {
+			final long next = end + SEGMENT - offset(end, start);
+			table.putLong(GARBAGE, table.getLong(GARBAGE) + next - end);
+			end = next;
+		}
+		final ByteBuffer view = this.segment(end).duplicate();
+		view.position(offset(end, start));
+		view.put(record);
+		table.putLong(END, end + record.length);
+		table.putLong((int) this.slot(index), end);
+		table.putInt((int) this.slot(index) + 8, hash);
+		table.putLong(SIZE, table.getLong(SIZE) + 1);
+	}
+
+	@Override
+	public Set<Entry<String, String>> entrySet() {
+		return new AbstractSet<Entry<String, String>>() {
+
+			@Override
+			public Iterator<Entry<String, String>> iterator() {
+				return new Slots();
+			}
+
+			@Override
+			public int size() {
+				return DiskMap.this.size();
+			}
+
+			@Override
+			public void clear() {
+				DiskMap.this.clear();
+			}
+
+		};
+	}
+
+	/**
+	 * Iterates over the used slots, reading every entry when it is used
+	 */
+	private final class Slots implements Iterator<Entry<String, String>> {
+
+		private int next = -1;
+		private int last = -1;
+
+		private Slots() {
+			this.advance();
+		}
+
+		private void advance() {
+			do
+				next++;
+			while (next <= mask && (DiskMap.this.record(next) == 0 || DiskMap.this.record(next) == TOMBSTONE));
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next <= mask;
+		}
+
+		@Override
+		public Entry<String, String> next() {
+			if (!this.hasNext())
+				throw new NoSuchElementException();
+			last = next;
+			this.advance();
+			return new Slot(last, DiskMap.this.key(DiskMap.this.record(last)));
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0)
+				throw new IllegalStateException();
+			DiskMap.this.removeSlot(last);
+			last = -1;
+		}
+
+	}
+
+	/**
+	 * Entry of a used slot, the value is read from the file every time it is used
+	 * so iterating over the keys never reads the values
+	 */
+	private final class Slot implements Entry<String, String> {
+
+		private final int index;
+		private final String key;
+
+		private Slot(int index, String key) {
+			this.index = index;
+			this.key = key;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public String getValue() {
+			return DiskMap.this.value(DiskMap.this.record(index));
+		}
+
+		@Override
+		public String setValue(String value) {
+			return DiskMap.this.put(key, value);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Entry))
+				return false;
+			final Entry<?, ?> entry = (Entry<?, ?>) other;
+			// Disk maps never hold null keys or values
+			return key.equals(entry.getKey()) && this.getValue().equals(entry.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ this.getValue().hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + this.getValue();
+		}
+
+	}
+
+	/**
+	 * Copies the entries of the given map
+	 *
+	 * @param values to be added
+	 */
+	@Override
+	public void putAll(Map<? extends String, ? extends String> values) {
+		for (Entry<? extends String, ? extends String> entry : values.entrySet())
+			this.put(entry.getKey(), entry.getValue());
+	}
+
+}
@@ -0,0 +1,226 @@
+package me.ansuz.amrv.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the files already constructed so constructing the same file with the
+ * same type again returns the same instance instead of reading the file again.
+ *
+ * <p>
+ * The files are identified by their canonical path, their type and the options
+ * they were created with. When the cache holds more files or more bytes than
+ * allowed, the least recently used files are removed. If soft references are
+ * used the garbage collector can also remove files when memory is needed.
+ * 
+ * @author Ansuz
+ *
+ */
+final class FileCache {
+
+	private static final int RESOLVED_PATHS = 4096;
+
+	private static final class Cached {
+		final Object file;
+		final long weight;
+
+		Cached(BaseFile file, long weight, boolean soft) {
+			this.file = soft ? new SoftReference<BaseFile>(file) : file;
+			this.weight = weight;
+		}
+
+		BaseFile get() {
+			if (file instanceof SoftReference)
+				return (BaseFile) ((SoftReference<?>) file).get();
+			return (BaseFile) file;
+		}
+	}
+
+	private final LinkedHashMap<List<Object>, Cached> entries = new LinkedHashMap<>(16, 0.75f, true);
+	// Canonical path of the last absolute paths resolved
+	private final Map<String, String> resolved = new LinkedHashMap<String, String>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > RESOLVED_PATHS;
+		}
+	};
+	// Amount of entries for each path, to know if a path is known at all
+	private final Map<String, Integer> paths = new HashMap<>();
+	private int maxEntries;
+	private long maxWeight;
+	private boolean soft;
+	private long weight;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	FileCache(int maxEntries, long maxWeight, boolean soft) {
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.soft = soft;
+	}
+
+	/**
+	 * Obtains the canonical path of a file, or the absolute one if the system cant
+	 * resolve it.
+	 *
+	 * <p>
+	 * Resolving a path needs a system call for every part of it, so the paths
+	 * already resolved are remembered
+	 */
+	String canonical(File file) {
+		final String absolute = file.getAbsolutePath();
+		synchronized (resolved) {
+			final String canonical = resolved.get(absolute);
+			if (canonical != null)
+				return canonical;
+		}
+		String canonical;
+		try {
+			canonical = file.getCanonicalPath();
+		} catch (IOException e) {
+			canonical = absolute;
+		}
+		synchronized (resolved) {
+			resolved.put(absolute, canonical);
+		}
+		return canonical;
+	}
+
+	/**
+	 * Creates the key that identifies a file on the cache
+	 * 
+	 * @param path    canonical path of the file
+	 * @param type    of the file
+	 * @param options the file was created with
+	 * 
+	 * @return the key for the cache
+	 */
+	static List<Object> key(String path, Class<? extends BaseFile> type, Object... options) {
+		final Object[] key = new Object[options.length + 2];
+		key[0] = path;
+		key[1] = type;
+		System.arraycopy(options, 0, key, 2, options.length);
+		return Arrays.asList(key);
+	}
+
+	/**
+	 * Checks if any file with the given path is cached
+	 */
+	synchronized boolean holds(String path) {
+		return paths.containsKey(path);
+	}
+
+	/**
+	 * Obtains the cached file for the key
+	 * 
+	 * @return the file or null if it is not cached
+	 */
+	synchronized BaseFile get(List<Object> key) {
+		final Cached entry = entries.get(key);
+		final BaseFile file = entry == null ? null : entry.get();
+		if (file == null) {
+			if (entry != null)
+				this.remove(key);
+			misses++;
+		} else
+			hits++;
+		return file;
+	}
+
+	/**
+	 * Adds a file to the cache if there is not one already for the key
+	 * 
+	 * @return the file that is cached for the key after this call
+	 */
+	synchronized BaseFile put(List<Object> key, BaseFile file) {
+		final Cached old = entries.get(key);
+		final BaseFile cached = old == null ? null : old.get();
+		if (cached != null)
+			return cached;
+		if (old != null)
+			this.remove(key);
+		final Cached entry = new Cached(file, Math.max(0, file.size()), soft);
+		entries.put(key, entry);
+		paths.merge((String) key.get(0), 1, Integer::sum);
+		weight += entry.weight;
+		this.evict();
+		return file;
+	}
+
+	/**
+	 * Removes the least recently used files until the limits are respected, the
+	 * last added file is always kept
+	 */
+	private void evict() {
+		final Iterator<Map.Entry<List<Object>, Cached>> it = entries.entrySet().iterator();
+		while (entries.size() > 1 && (entries.size() > maxEntries || weight > maxWeight)) {
+			final Map.Entry<List<Object>, Cached> eldest = it.next();
+			it.remove();
+			this.forget(eldest.getKey(), eldest.getValue());
+			evictions++;
+		}
+	}
+
+	private void remove(List<Object> key) {
+		this.forget(key, entries.remove(key));
+	}
+
+	/**
+	 * Updates the weight and paths after removing a key
+	 */
+	private void forget(List<Object> key, Cached removed) {
+		if (removed != null)
+			weight -= removed.weight;
+		paths.computeIfPresent((String) key.get(0), (path, count) -> count == 1 ? null : count - 1);
+	}
+
+	synchronized void setLimits(int maxEntries, long maxWeight) {
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.evict();
+	}
+
+	synchronized void setSoft(boolean soft) {
+		this.soft = soft;
+	}
+
+	synchronized void clear() {
+		synchronized (resolved) {
+			resolved.clear();
+		}
+		entries.clear();
+		paths.clear();
+		weight = 0;
+	}
+
+	synchronized long hits() {
+		return hits;
+	}
+
+	synchronized long misses() {
+		return misses;
+	}
+
+	synchronized long evictions() {
+		return evictions;
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized long weight() {
+		return weight;
+	}
+
+}
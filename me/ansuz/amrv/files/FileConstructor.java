@@ -4,19 +4,35 @@ import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.imageio.ImageIO;
 
+import me.ansuz.amrv.files.BaseFile.FileOperationResult;
+import me.ansuz.amrv.files.FileLogger.Level;
 import me.ansuz.amrv.files.FileManager.FileErrorMessage;
 import me.ansuz.amrv.files.FileManager.FileOperationMessage;
+import me.ansuz.amrv.files.FileMetrics.Operation;
 
 public final class FileConstructor {
 
 	private final File file;
+	// Canonical path of the file, only resolved when the cache is used
+	private String canonical;
+	// If the files created should not be read until their data is used
+	private boolean lazy;
 
 	/**
 	 * Creates a file in a way to guarantee that most of the errors that IO will
@@ -32,12 +48,14 @@ public final class FileConstructor {
 	 * @param file the file to be used for the constructor
 	 */
 	protected FileConstructor(File file) {
+		final FileMetrics metrics = FileManager.metrics();
+		final long start = metrics == null ? 0 : System.nanoTime();
 		// Warns if the file is being created at the root folder of the disk instead of
 		// the project folder
-		if (file.getPath().startsWith(File.separator) && FileManager.isDebugEnabled()) {
-			System.out.println(FileManager.WARNING + "File started with " + File.separator
+		if (file.getPath().startsWith(File.separator) && FileManager.isLogging(Level.WARNING)) {
+			FileManager.logger().log(Level.WARNING, "File started with " + File.separator
 					+ ", file will be located on: \n" + file.getAbsolutePath() + "\nRemove " + File.separator
-					+ " to put the file inside the project folder");
+					+ " to put the file inside the project folder", null);
 		}
 
 		// Creates every directory to reach the file in case that the path to the file
@@ -57,16 +75,78 @@ public final class FileConstructor {
 				FileManager.warn(FileOperationMessage.FILE_CREATED, file.getName());
 
 			} catch (IOException e) {
-				FileManager.error(FileErrorMessage.CREATING, file.getName());
-				e.printStackTrace();
+				FileManager.error(FileErrorMessage.CREATING, file.getName(), e);
 			}
 
 		// Last check for the file if exists or not in case something weird happened
-		if (!file.exists())
-			System.err.println(FileManager.ERROR + "\"" + file.getName() + "\""
+		// This one is logged even if the debug mode is disabled
+		if (!file.exists() && FileManager.logger().isEnabled(Level.ERROR))
+			FileManager.logger().log(Level.ERROR, "\"" + file.getName() + "\""
 					+ " does not exist and the creator is not operative, "
-					+ " the process will continue but there is no guarantee it will work propertly ");
+					+ " the process will continue but there is no guarantee it will work propertly ", null);
 		this.file = file;
+		if (metrics != null)
+			metrics.record(FileConstructor.class, Operation.CONSTRUCT, start, 0,
+					file.exists() ? FileOperationResult.DONE : FileOperationResult.IOERROR);
+	}
+
+	/**
+	 * Creates the constructor for a file that is already known to exist, like a
+	 * cached one, so the checks are skipped.
+	 *
+	 * @param file      the file to be used for the constructor
+	 * @param canonical path of the file or null if it was not resolved yet
+	 */
+	FileConstructor(File file, String canonical) {
+		this.file = file;
+		this.canonical = canonical;
+	}
+
+	/**
+	 * Obtains the file from the cache if it is enabled, creating it if it is not
+	 * cached yet.
+	 *
+	 * @param type    of the file
+	 * @param creator to create the file when it is not cached
+	 * @param options that were used to create the file
+	 *
+	 * @return the cached file or a new one
+	 */
+	private <T extends BaseFile> T cached(Class<T> type, Supplier<T> creator, Object... options) {
+		final FileCache cache = FileManager.cache();
+		if (cache == null)
+			return creator.get();
+		if (canonical == null)
+			canonical = cache.canonical(file);
+		final List<Object> key = FileCache.key(canonical, type, options);
+		final BaseFile cached = cache.get(key);
+		if (cached != null)
+			return type.cast(cached);
+		return type.cast(cache.put(key, creator.get()));
+	}
+
+	/**
+	 * Makes the files created by this constructor lazy, so the file is not read
+	 * when it is created but the first time its data is used, and only once.
+	 *
+	 * <p>
+	 * Creating a lazy file is almost free, useful when many files are created but
+	 * only some of them are read, or when the contents are going to be replaced
+	 * with methods like <code>setData()</code> or <code>clear()</code>, which do
+	 * not read the file. Methods like <code>getName()</code> or
+	 * <code>size()</code> never read it.
+	 *
+	 * <p>
+	 * If the cache is enabled and the file was already created the cached one is
+	 * returned, lazy or not.
+	 *
+	 * @see BaseFile#isLoaded()
+	 *
+	 * @return this same constructor
+	 */
+	public FileConstructor lazy() {
+		this.lazy = true;
+		return this;
 	}
 
 	/**
@@ -93,7 +173,41 @@ public final class FileConstructor {
 	 * @return a new instance of a file already constructed
 	 */
 	public PlainFile toPlainFile() {
-		return new PlainFile(file);
+		return this.toPlainFile(Charset.defaultCharset());
+	}
+
+	/**
+	 * Instantiates the object as a new PlainFile that reads and writes its
+	 * contents with the given charset.
+	 *
+	 * @see #toPlainFile()
+	 * @see Charset
+	 *
+	 * @param charset used to decode and encode the file
+	 *
+	 * @return a new instance of a file already constructed
+	 */
+	public PlainFile toPlainFile(Charset charset) {
+		return this.toPlainFile(charset, false);
+	}
+
+	/**
+	 * Instantiates the object as a new PlainFile that reads and writes its
+	 * contents with the given charset and that can be shared between threads if
+	 * it is concurrent.
+	 *
+	 * @see #toPlainFile()
+	 * @see PlainFile#isConcurrent()
+	 *
+	 * @param charset    used to decode and encode the file
+	 * @param concurrent if the file can be used by many threads at the same time
+	 *                   without any external lock
+	 *
+	 * @return a new instance of a file already constructed
+	 */
+	public PlainFile toPlainFile(Charset charset, boolean concurrent) {
+		return this.cached(PlainFile.class, () -> new PlainFile(file, charset, lazy, concurrent), charset,
+				concurrent);
 	}
 
 	/**
@@ -109,7 +223,65 @@ public final class FileConstructor {
 	 * @return a new instance of a file already constructed
 	 */
 	public ListFile toListFile() {
-		return new ListFile(file);
+		return this.toListFile(new ListFile.Option[0]);
+	}
+
+	/**
+	 * Instantiates the object as a new ListFile with the given options.
+	 *
+	 * <p>
+	 * Use <code>ListFile.Option.INDEXED</code> for huge files, those will only
+	 * keep the position of every line in memory and read the lines from the file
+	 * when requested.
+	 *
+	 * @see ListFile.Option
+	 *
+	 * @param options that change how the file is managed
+	 *
+	 * @return a new instance of a file already constructed
+	 */
+	public ListFile toListFile(ListFile.Option... options) {
+		final Set<ListFile.Option> set = EnumSet.noneOf(ListFile.Option.class);
+		set.addAll(Arrays.asList(options));
+		return this.cached(ListFile.class, () -> new ListFile(file, lazy, options), set);
+	}
+
+	/**
+	 * Obtains the lines of the file as a stream without creating a ListFile, the
+	 * file is mapped into memory and every line is read from it as the stream
+	 * uses it, so the memory used does not depend on the size of the file.
+	 *
+	 * <p>
+	 * Use <code>toLineStream().parallel()</code> to process different chunks of
+	 * the file at the same time
+	 *
+	 * @see Stream
+	 *
+	 * @return a sequential stream of the lines of the file
+	 *
+	 * @throws IOException if the file cant be mapped
+	 */
+	public Stream<String> toLineStream() throws IOException {
+		return this.toLineStream(Charset.defaultCharset());
+	}
+
+	/**
+	 * Obtains the lines of the file as a stream decoded with the given charset.
+	 *
+	 * @see #toLineStream()
+	 *
+	 * @param charset used to decode the lines
+	 *
+	 * @return a sequential stream of the lines of the file
+	 *
+	 * @throws IOException if the file cant be mapped
+	 */
+	public Stream<String> toLineStream(Charset charset) throws IOException {
+		final MappedRegions regions;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			regions = new MappedRegions(channel);
+		}
+		return StreamSupport.stream(new LineSpliterator(regions, charset, 0, regions.length()), false);
 	}
 
 	/**
@@ -127,7 +299,27 @@ public final class FileConstructor {
 	 * @return a new instance of a file already constructed
 	 */
 	public MapFile toMapFile() {
-		return new MapFile(file);
+		return this.toMapFile(new MapFile.Option[0]);
+	}
+
+	/**
+	 * Instantiates the object as a new MapFile with the given options.
+	 *
+	 * <p>
+	 * Use <code>MapFile.Option.JOURNALED</code> for big maps that change often,
+	 * saving those only appends the changed values to a log next to the file,
+	 * and <code>MapFile.Option.CONCURRENT</code> for maps shared by many threads.
+	 *
+	 * @see MapFile.Option
+	 *
+	 * @param options that change how the file is saved
+	 *
+	 * @return a new instance of a file already constructed
+	 */
+	public MapFile toMapFile(MapFile.Option... options) {
+		final Set<MapFile.Option> set = EnumSet.noneOf(MapFile.Option.class);
+		set.addAll(Arrays.asList(options));
+		return this.cached(MapFile.class, () -> new MapFile(file, lazy, options), set);
 	}
 
 	/**
@@ -150,7 +342,7 @@ public final class FileConstructor {
 	 * @return a new instance of a file already constructed
 	 */
 	public ImageFile toImageFile() {
-		return new ImageFile(file);
+		return this.cached(ImageFile.class, () -> new ImageFile(file, lazy));
 	}
 	
 	/**
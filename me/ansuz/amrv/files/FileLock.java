@@ -0,0 +1,124 @@
+package me.ansuz.amrv.files;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Lock of the files that can be shared between threads, readers do not take
+ * the lock at all, they read the data and check that no change happened while
+ * they were reading, only reading again holding the lock if one did. Changes
+ * take the lock exclusively.
+ *
+ * <p>
+ * The readers may see the data in the middle of a change before checking it,
+ * so they must not modify anything and must expect any exception, which is
+ * ignored as the data is read again holding the lock.
+ *
+ * <p>
+ * The lock is not reentrant, a change can not read or change through the lock
+ * again.
+ *
+ * @author Ansuz
+ *
+ */
+final class FileLock {
+
+	private final StampedLock lock = new StampedLock();
+	// Changes done since the file was created, only modified holding the lock
+	private volatile long version;
+
+	/**
+	 * Reads part of the data without blocking unless it is being changed
+	 *
+	 * @param reader that reads the data without modifying anything
+	 *
+	 * @return what the reader returned while the data was not changed
+	 */
+	<T> T read(Supplier<T> reader) {
+		final long stamp = lock.tryOptimisticRead();
+		if (stamp != 0)
+			try {
+				final T value = reader.get();
+				if (lock.validate(stamp))
+					return value;
+			} catch (RuntimeException e) {
+				// The data was changed while being read
+			}
+		final long locked = lock.readLock();
+		try {
+			return reader.get();
+		} finally {
+			lock.unlockRead(locked);
+		}
+	}
+
+	/**
+	 * Reads part of the data without blocking unless it is being changed
+	 *
+	 * @see #read(Supplier)
+	 *
+	 * @param reader that reads the data without modifying anything
+	 *
+	 * @return what the reader returned while the data was not changed
+	 */
+	int readInt(IntSupplier reader) {
+		final long stamp = lock.tryOptimisticRead();
+		if (stamp != 0)
+			try {
+				final int value = reader.getAsInt();
+				if (lock.validate(stamp))
+					return value;
+			} catch (RuntimeException e) {
+				// The data was changed while being read
+			}
+		final long locked = lock.readLock();
+		try {
+			return reader.getAsInt();
+		} finally {
+			lock.unlockRead(locked);
+		}
+	}
+
+	/**
+	 * Changes the data, waiting for the readers holding the lock and blocking
+	 * every other change and reader until it ends
+	 *
+	 * @param writer that changes the data
+	 */
+	void write(Runnable writer) {
+		final long stamp = lock.writeLock();
+		try {
+			// Counted before the change marks the file dirty, so a save that ends
+			// after the change either sees the change counted or the file marked
+			version++;
+			writer.run();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Blocks the changes without blocking the readers, used while the data is
+	 * saved and by readers that must modify something other readers may modify
+	 * too, like a cache
+	 *
+	 * @return the stamp to unlock it
+	 */
+	long share() {
+		return lock.readLock();
+	}
+
+	void unshare(long stamp) {
+		lock.unlockRead(stamp);
+	}
+
+	/**
+	 * @return the amount of changes done, so a save can know if the data changed
+	 *         after it was written
+	 */
+	long version() {
+		return version;
+	}
+
+}
@@ -0,0 +1,59 @@
+package me.ansuz.amrv.files;
+
+/**
+ * Receives the warnings and errors of the files, set your own with
+ * <code>FileManager.setLogger()</code> to send them wherever you want.
+ *
+ * <p>
+ * The messages are only built after <code>isEnabled()</code> returns true for
+ * their level, so disabled levels cost nothing.
+ * 
+ * @author Ansuz
+ *
+ */
+public interface FileLogger {
+
+	/**
+	 * How important a message is
+	 */
+	enum Level {
+		WARNING, ERROR
+	}
+
+	/**
+	 * A logger that discards every message without building them
+	 */
+	FileLogger NONE = new FileLogger() {
+
+		@Override
+		public boolean isEnabled(Level level) {
+			return false;
+		}
+
+		@Override
+		public void log(Level level, String message, Throwable error) {
+		}
+
+	};
+
+	/**
+	 * Checks if the messages of the given level should be logged, this is called
+	 * before building any message.
+	 *
+	 * @param level of the message
+	 *
+	 * @return true if the messages of that level are wanted
+	 */
+	boolean isEnabled(Level level);
+
+	/**
+	 * Logs a message, this can be called from any thread and should return as
+	 * soon as possible.
+	 *
+	 * @param level   of the message
+	 * @param message to be logged
+	 * @param error   that caused the message or null if there is none
+	 */
+	void log(Level level, String message, Throwable error);
+
+}
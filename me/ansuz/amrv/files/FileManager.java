@@ -1,6 +1,31 @@
 package me.ansuz.amrv.files;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import me.ansuz.amrv.files.BaseFile.FileOperationResult;
+import me.ansuz.amrv.files.FileLogger.Level;
+import me.ansuz.amrv.files.FileMetrics.Operation;
 
 /**
  * This class handles file operations and adds the option to retrieve, write and
@@ -14,12 +39,35 @@ public class FileManager {
 
 	// Default location to create new files
 	private static String root = new File("").getAbsolutePath();
-	private static boolean debug = true;
+	private static volatile boolean debug = true;
+	private static volatile FileLogger logger;
+	// Logger created by the manager, closed when it is replaced
+	private static AsyncFileLogger created;
+	private static volatile FileMetrics metrics;
+	private static FileMetrics published;
+	private static long watchDelay = 100;
+	private static volatile FileWatcher watcher;
+	private static volatile FileCache cache;
+	private static int cacheEntries = 1024;
+	private static long cacheWeight = 64L << 20;
+	private static boolean cacheSoft = false;
+	private static volatile Executor executor;
+	// Directories that are known to exist, so they are not checked again
+	private static final int KNOWN_DIRECTORIES = 1024;
+	private static final Set<Path> directories = Collections
+			.newSetFromMap(new LinkedHashMap<Path, Boolean>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Path, Boolean> eldest) {
+					return size() > KNOWN_DIRECTORIES;
+				}
+			});
 	protected static final String WARNING = "[WARNING] ";
 	protected static final String ERROR = "[ERROR] ";
 
 	protected enum FileOperationMessage {
-		CANT_SAVE, CANT_READ, CANT_EXEC, CANT_DEL, FOLDER_CREATED, FILE_CREATED, OTHER
+		CANT_SAVE, CANT_READ, CANT_EXEC, CANT_DEL, FOLDER_CREATED, FILE_CREATED, EXTERNAL_CHANGE, OTHER
 	}
 
 	protected enum FileErrorMessage {
@@ -27,7 +75,7 @@ public class FileManager {
 	}
 
 	protected static void warn(FileOperationMessage msg, String filename) {
-		if (!debug)
+		if (!isLogging(Level.WARNING))
 			return;
 		String message = "";
 		switch (msg) {
@@ -49,15 +97,22 @@ public class FileManager {
 		case FILE_CREATED:
 			message = "Needed to create \"" + filename + "\" as it didnt exist at least on the given path";
 			break;
+		case EXTERNAL_CHANGE:
+			message = "File \"" + filename + "\" changed on the disk but was not reloaded as it has unsaved changes";
+			break;
 		default:
 			message = "File \"" + filename + "\" cant be manipulated";
 			break;
 		}
-		System.out.println(WARNING + message);
+		logger().log(Level.WARNING, message, null);
 	}
 
 	protected static void error(FileErrorMessage msg, String filename) {
-		if (!debug)
+		error(msg, filename, null);
+	}
+
+	protected static void error(FileErrorMessage msg, String filename, Throwable cause) {
+		if (!isLogging(Level.ERROR))
 			return;
 		String message = "";
 		switch (msg) {
@@ -75,11 +130,70 @@ public class FileManager {
 			break;
 		case CREATING:
 			message = "There was an error creating file \"" + filename + "\"";
+			break;
 		default:
 			message = "File \"" + filename + "\" cant be manipulated";
 			break;
 		}
-		System.out.println(ERROR + message);
+		logger().log(Level.ERROR, message, cause);
+	}
+
+	/**
+	 * Checks if the messages of the given level will be logged, so messages are
+	 * only built when needed
+	 */
+	static boolean isLogging(Level level) {
+		return debug && logger().isEnabled(level);
+	}
+
+	/**
+	 * Obtains the logger in use, creating the default one if there is none
+	 */
+	static FileLogger logger() {
+		FileLogger current = logger;
+		if (current == null)
+			synchronized (FileManager.class) {
+				if (logger == null)
+					logger = created = new AsyncFileLogger(System.out, System.err, 1024);
+				current = logger;
+			}
+		return current;
+	}
+
+	/**
+	 * Sets where the warnings and errors of the files are sent, by default they
+	 * are printed on the console from a background thread so logging never
+	 * blocks the operations on the files.
+	 *
+	 * <p>
+	 * Use <code>FileLogger.NONE</code> to discard every message without building
+	 * them. The default logger is closed once it is replaced, printing the
+	 * messages it still holds.
+	 *
+	 * @see FileLogger
+	 * @see AsyncFileLogger
+	 *
+	 * @param logger that will receive the messages
+	 */
+	public static void setLogger(FileLogger logger) {
+		final AsyncFileLogger replaced;
+		synchronized (FileManager.class) {
+			FileManager.logger = logger;
+			replaced = created != logger ? created : null;
+			if (replaced != null)
+				created = null;
+		}
+		if (replaced != null)
+			replaced.close();
+	}
+
+	/**
+	 * Gets the logger that receives the warnings and errors of the files.
+	 *
+	 * @return the logger in use
+	 */
+	public static FileLogger getLogger() {
+		return logger();
 	}
 
 	/**
@@ -88,6 +202,9 @@ public class FileManager {
 	 * solve those erros, the debug mode is enabled by default.
 	 *
 	 * <p>
+	 * While disabled, no message is built nor sent to the logger
+	 *
+	 * <p>
 	 * This does not affect warning or errors that are hardcoded to be thrown in
 	 * case something really bad happens
 	 *
@@ -111,6 +228,116 @@ public class FileManager {
 		return debug;
 	}
 
+	/**
+	 * @return the metrics being recorded or null if they are disabled
+	 */
+	static FileMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Enables or disables the metrics of the files, while enabled every
+	 * construction, reload, save and delete is counted and timed for each type of
+	 * file, and the metrics are published as an MBean named
+	 * <code>me.ansuz.amrv.files:type=FileMetrics</code> on the platform server.
+	 *
+	 * <p>
+	 * The metrics are disabled by default, while disabled the operations are not
+	 * measured at all and the MBean is unregistered. Enabling them again keeps
+	 * the previous values.
+	 *
+	 * @see FileMetrics
+	 *
+	 * @param enabled if the metrics should be recorded
+	 */
+	public static synchronized void setMetricsEnabled(boolean enabled) {
+		if (enabled == (metrics != null))
+			return;
+		if (published == null)
+			published = new FileMetrics();
+		metrics = enabled ? published : null;
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName("me.ansuz.amrv.files:type=FileMetrics");
+			if (enabled)
+				server.registerMBean(published, name);
+			else if (server.isRegistered(name))
+				server.unregisterMBean(name);
+		} catch (JMException e) {
+			error(FileErrorMessage.OTHER, "FileMetrics", e);
+		}
+	}
+
+	/**
+	 * Gets the metrics of the files.
+	 *
+	 * @see #setMetricsEnabled(boolean)
+	 *
+	 * @return the metrics or null if they were never enabled
+	 */
+	public static synchronized FileMetrics getMetrics() {
+		return published;
+	}
+
+	/**
+	 * @return the executor for the asynchronous operations, creating the default
+	 *         one if none was set
+	 */
+	static Executor executor() {
+		Executor current = executor;
+		if (current == null)
+			synchronized (FileManager.class) {
+				current = executor;
+				if (current == null)
+					executor = current = defaultExecutor();
+			}
+		return current;
+	}
+
+	/**
+	 * Creates an executor that runs every task on a new virtual thread if the
+	 * virtual machine supports them, otherwise a pool of daemon threads
+	 */
+	private static Executor defaultExecutor() {
+		try {
+			return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Virtual threads are not aviable on this version
+		}
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newCachedThreadPool(task -> {
+			final Thread thread = new Thread(task, "FileManager-io-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Sets the executor that runs the asynchronous operations of the files like
+	 * <code>saveAsync()</code>, by default every operation runs on a virtual
+	 * thread if the virtual machine supports them or on a pool of daemon threads
+	 * otherwise.
+	 *
+	 * <p>
+	 * The executor is never shut down by the manager.
+	 *
+	 * @param executor to run the operations, or null to use the default one
+	 */
+	public static synchronized void setExecutor(Executor executor) {
+		FileManager.executor = executor;
+	}
+
+	/**
+	 * Gets the executor that runs the asynchronous operations of the files.
+	 *
+	 * @see #setExecutor(Executor)
+	 *
+	 * @return the executor being used
+	 */
+	public static Executor getExecutor() {
+		return executor();
+	}
+
 	/**
 	 * Sets the default path from the disk to the next files.
 	 * <p>
@@ -195,13 +422,330 @@ public class FileManager {
 	 * @return the FileConstructor for the given file
 	 */
 	public static FileConstructor construct(File file) {
+		final FileConstructor cached = cached(file);
+		if (cached != null)
+			return cached;
 		FileConstructor constructor = new FileConstructor(file);
 		return constructor;
 	}
 
-	/*
-	 * TODO: create a method to create files on directory create a method to create
-	 * directories on directory
+	/**
+	 * Obtains the constructor of a file the cache already holds, skipping the
+	 * checks as the file is known to exist
+	 *
+	 * @return the constructor or null if the cache is disabled or does not hold
+	 *         the file
+	 */
+	private static FileConstructor cached(File file) {
+		final FileCache current = cache;
+		if (current != null) {
+			final String canonical = current.canonical(file);
+			if (current.holds(canonical))
+				return new FileConstructor(file, canonical);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the cache of files or null if it is disabled
+	 */
+	static FileCache cache() {
+		return cache;
+	}
+
+	/**
+	 * Enables or disables the cache of files, while enabled constructing a file
+	 * that was already constructed with the same type and options returns that
+	 * same instance instead of reading the file again, files are identified by
+	 * their canonical path so different paths to the same file share the
+	 * instance.
+	 *
+	 * <p>
+	 * Remember that cached files are shared, so any change done to one of them is
+	 * seen by everyone that constructed it, and they are not reloaded when
+	 * obtained from the cache, use <code>watch()</code> or <code>reload()</code>
+	 * to keep them updated. Disabling the cache removes every file from it.
+	 *
+	 * <p>
+	 * The cache is disabled by default
+	 *
+	 * @param enabled if the files should be cached
+	 */
+	public static synchronized void setCacheEnabled(boolean enabled) {
+		if (enabled && cache == null)
+			cache = new FileCache(cacheEntries, cacheWeight, cacheSoft);
+		else if (!enabled)
+			cache = null;
+	}
+
+	/**
+	 * Checks if the files are being cached.
+	 *
+	 * @return true if the cache is enabled
 	 */
+	public static boolean isCacheEnabled() {
+		return cache != null;
+	}
+
+	/**
+	 * Sets the limits of the cache, when any of them is exceeded the least
+	 * recently used files are removed from the cache.
+	 *
+	 * @param maxFiles amount of files that can be cached, 1024 by default
+	 * @param maxBytes sum of the sizes of the cached files, 64MB by default
+	 */
+	public static synchronized void setCacheLimits(int maxFiles, long maxBytes) {
+		cacheEntries = maxFiles;
+		cacheWeight = maxBytes;
+		if (cache != null)
+			cache.setLimits(maxFiles, maxBytes);
+	}
+
+	/**
+	 * Makes the cache hold the files with soft references, so the garbage
+	 * collector can remove them from the cache when the memory is needed. Only
+	 * affects files cached after this call.
+	 *
+	 * @param soft if soft references should be used, false by default
+	 */
+	public static synchronized void setCacheSoftReferences(boolean soft) {
+		cacheSoft = soft;
+		if (cache != null)
+			cache.setSoft(soft);
+	}
+
+	/**
+	 * Removes every file from the cache, the files already obtained can still be
+	 * used but constructing them again will read them.
+	 */
+	public static void clearCache() {
+		final FileCache current = cache;
+		if (current != null)
+			current.clear();
+	}
+
+	/**
+	 * Gets how many times a constructed file was found on the cache.
+	 *
+	 * @return the amount of hits or 0 if the cache is disabled
+	 */
+	public static long getCacheHits() {
+		final FileCache current = cache;
+		return current == null ? 0 : current.hits();
+	}
+
+	/**
+	 * Gets how many times a constructed file was not found on the cache and had
+	 * to be read.
+	 *
+	 * @return the amount of misses or 0 if the cache is disabled
+	 */
+	public static long getCacheMisses() {
+		final FileCache current = cache;
+		return current == null ? 0 : current.misses();
+	}
+
+	/**
+	 * Gets how many files were removed from the cache to respect its limits.
+	 *
+	 * @return the amount of evictions or 0 if the cache is disabled
+	 */
+	public static long getCacheEvictions() {
+		final FileCache current = cache;
+		return current == null ? 0 : current.evictions();
+	}
+
+	/**
+	 * Gets the amount of files currently cached.
+	 *
+	 * @return the amount of files or 0 if the cache is disabled
+	 */
+	public static int getCacheSize() {
+		final FileCache current = cache;
+		return current == null ? 0 : current.size();
+	}
+
+	/**
+	 * Starts reloading the given file automatically whenever it changes on the
+	 * disk, so there is no need to call <code>reload()</code> before reading it.
+	 *
+	 * <p>
+	 * Every watched file shares the same background thread and each directory is
+	 * only registered once, so thousands of files can be watched. The reload
+	 * happens on that background thread once the file stops changing for the
+	 * delay given by <code>setWatchDelay()</code>, files with unsaved changes are
+	 * not reloaded to avoid losing them.
+	 *
+	 * <p>
+	 * The reload holds the monitor of the file, a file that is not concurrent
+	 * must be modified inside <code>synchronized (file)</code> blocks while it is
+	 * watched, otherwise a change done while it is reloaded may be lost.
+	 *
+	 * <p>
+	 * The file will be kept until <code>unwatch()</code> is called for it.
+	 *
+	 * @param file to be reloaded when it changes
+	 *
+	 * @return true if the file is now being watched, false if the system cant
+	 *         watch its directory
+	 */
+	public static boolean watch(BaseFile file) {
+		try {
+			synchronized (FileManager.class) {
+				if (watcher == null)
+					watcher = new FileWatcher(watchDelay);
+			}
+			watcher.register(file);
+			return true;
+		} catch (IOException e) {
+			warn(FileOperationMessage.CANT_READ, file.getName());
+			return false;
+		}
+	}
+
+	/**
+	 * Stops reloading the given file automatically when it changes on the disk.
+	 *
+	 * @param file that was given to <code>watch()</code>
+	 */
+	public static void unwatch(BaseFile file) {
+		final FileWatcher current = watcher;
+		if (current != null)
+			current.unregister(file);
+	}
+
+	/**
+	 * Sets how long a watched file must stay without changes before reloading it,
+	 * so a file that is being written is not reloaded multiple times.
+	 *
+	 * @param millis to wait after the last change, 100 by default
+	 */
+	public static synchronized void setWatchDelay(long millis) {
+		watchDelay = millis;
+		if (watcher != null)
+			watcher.setDelay(millis);
+	}
+
+	/**
+	 * Creates safe files for all the given paths at once, just like calling
+	 * <code>construct()</code> for each one but much faster for many files.
+	 *
+	 * <p>
+	 * Every directory is only checked and created once no matter how many files
+	 * it has, the directories already known to exist are remembered between
+	 * calls, and the files are created in parallel with a single system call
+	 * for each one.
+	 *
+	 * <p>
+	 * Files the cache already holds are not checked again, like in
+	 * <code>construct()</code>.
+	 *
+	 * @param paths of the files to be obtained or created
+	 *
+	 * @return the FileConstructor for every path in the same order
+	 */
+	public static List<FileConstructor> constructAll(Collection<Path> paths) {
+		final List<Path> list = new ArrayList<>(paths);
+		final List<FileConstructor> constructors = new ArrayList<>(list.size());
+		// The files the cache holds are known to exist, like in construct()
+		final List<Path> created = new ArrayList<>();
+		for (Path path : list) {
+			final FileConstructor cached = cached(path.toFile());
+			constructors.add(cached);
+			if (cached == null)
+				created.add(path);
+		}
+
+		final Set<Path> parents = new LinkedHashSet<>();
+		for (Path path : created) {
+			final Path parent = path.toAbsolutePath().getParent();
+			if (parent != null)
+				parents.add(parent);
+		}
+		for (Path parent : parents)
+			createDirectory(parent);
+
+		created.parallelStream().forEach(FileManager::createFile);
+		for (int i = 0; i < list.size(); i++)
+			if (constructors.get(i) == null)
+				constructors.set(i, new FileConstructor(list.get(i).toFile(), null));
+		return constructors;
+	}
+
+	/**
+	 * Saves all the given files atomically sharing the cost of forcing them to
+	 * the disk, so saving many files durably costs about the same as saving one.
+	 *
+	 * <p>
+	 * Every modified file is first written to a temporal file on its directory,
+	 * then all of them are forced to the disk at the same time, renamed over
+	 * their files and finally every directory is forced once. A crash at any
+	 * moment leaves every file with either its old or its new contents.
+	 *
+	 * <p>
+	 * The files are saved atomically even if they do not have
+	 * <code>setAtomicSaveEnabled()</code>, a file that fails does not stop the
+	 * others from being saved.
+	 *
+	 * @param files to be saved
+	 *
+	 * @return the result of the save of every file in the same order
+	 */
+	public static List<FileOperationResult> saveAll(Collection<? extends BaseFile> files) {
+		return AtomicSave.saveAll(files, true);
+	}
+
+	/**
+	 * Creates a directory and every parent needed if it is not known to exist
+	 */
+	private static void createDirectory(Path directory) {
+		synchronized (directories) {
+			if (directories.contains(directory))
+				return;
+		}
+		try {
+			if (!Files.isDirectory(directory)) {
+				Files.createDirectories(directory);
+				warn(FileOperationMessage.FOLDER_CREATED, directory.getFileName().toString());
+			}
+			synchronized (directories) {
+				directories.add(directory);
+			}
+		} catch (IOException e) {
+			error(FileErrorMessage.CREATING, directory.getFileName().toString(), e);
+		}
+	}
+
+	/**
+	 * Creates a file if it does not exist, if its directory was removed after it
+	 * was known to exist it is created again, the creation is recorded on the
+	 * metrics like the one of <code>construct()</code>
+	 */
+	private static void createFile(Path path) {
+		final FileMetrics current = metrics;
+		final long start = current == null ? 0 : System.nanoTime();
+		boolean exists = true;
+		try {
+			try {
+				Files.createFile(path);
+			} catch (NoSuchFileException e) {
+				final Path parent = path.toAbsolutePath().getParent();
+				synchronized (directories) {
+					directories.remove(parent);
+				}
+				createDirectory(parent);
+				Files.createFile(path);
+			}
+			warn(FileOperationMessage.FILE_CREATED, path.getFileName().toString());
+		} catch (FileAlreadyExistsException e) {
+			// The file is already there, that is what was wanted
+		} catch (IOException e) {
+			exists = false;
+			error(FileErrorMessage.CREATING, path.getFileName().toString(), e);
+		}
+		if (current != null)
+			current.record(FileConstructor.class, Operation.CONSTRUCT, start, 0,
+					exists ? FileOperationResult.DONE : FileOperationResult.IOERROR);
+	}
 
 }
\ No newline at end of file
@@ -0,0 +1,250 @@
+package me.ansuz.amrv.files;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import me.ansuz.amrv.files.BaseFile.FileOperationResult;
+
+/**
+ * Counts the operations done on the files, the bytes they transferred, how
+ * they ended and how long they took, separated by the type of the file.
+ *
+ * <p>
+ * Recording an operation does not allocate nor lock, the counters are
+ * <code>LongAdder</code> instances and the latencies are stored on a histogram
+ * with a bucket for every power of two nanoseconds, so the percentiles are
+ * given as the upper bound of the bucket they fall in.
+ *
+ * <p>
+ * Enable them with <code>FileManager.setMetricsEnabled(true)</code>
+ * 
+ * @author Ansuz
+ *
+ */
+public final class FileMetrics implements FileMetricsMXBean {
+
+	/**
+	 * Operations that are measured
+	 */
+	public enum Operation {
+		CONSTRUCT, RELOAD, SAVE, DELETE
+	}
+
+	private static final Operation[] OPERATIONS = Operation.values();
+	private static final FileOperationResult[] RESULTS = FileOperationResult.values();
+
+	/**
+	 * The metrics of a single operation for a single type of file
+	 */
+	private static final class Recorder {
+		final LongAdder count = new LongAdder();
+		final LongAdder bytes = new LongAdder();
+		final LongAdder[] results = adders(RESULTS.length);
+		final LongAdder[] buckets = adders(Long.SIZE + 1);
+		final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		void record(long nanos, long bytes, FileOperationResult result) {
+			count.increment();
+			this.bytes.add(bytes);
+			results[result.ordinal()].increment();
+			buckets[Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, nanos))].increment();
+			max.accumulate(nanos);
+		}
+
+		long percentile(double percentile) {
+			final long[] counts = new long[buckets.length];
+			long total = 0;
+			for (int i = 0; i < counts.length; i++)
+				total += counts[i] = buckets[i].sum();
+			if (total == 0)
+				return 0;
+			final long wanted = (long) Math.ceil(total * percentile);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= wanted)
+					return Math.min(i == Long.SIZE ? Long.MAX_VALUE : (1L << i) - 1, max.get());
+			}
+			return max.get();
+		}
+
+		void reset() {
+			count.reset();
+			bytes.reset();
+			for (LongAdder adder : results)
+				adder.reset();
+			for (LongAdder adder : buckets)
+				adder.reset();
+			max.reset();
+		}
+
+		private static LongAdder[] adders(int amount) {
+			final LongAdder[] adders = new LongAdder[amount];
+			for (int i = 0; i < amount; i++)
+				adders[i] = new LongAdder();
+			return adders;
+		}
+	}
+
+	private final Map<Class<?>, Recorder[]> types = new ConcurrentHashMap<>();
+	private final ClassValue<Recorder[]> recorders = new ClassValue<Recorder[]>() {
+		@Override
+		protected Recorder[] computeValue(Class<?> type) {
+			return types.computeIfAbsent(type, t -> {
+				final Recorder[] recorders = new Recorder[OPERATIONS.length];
+				for (int i = 0; i < recorders.length; i++)
+					recorders[i] = new Recorder();
+				return recorders;
+			});
+		}
+	};
+
+	FileMetrics() {
+	}
+
+	/**
+	 * Records an operation that just ended
+	 *
+	 * @param type      of the file
+	 * @param operation that was done
+	 * @param start     value of <code>System.nanoTime()</code> when it started
+	 * @param bytes     transferred by the operation
+	 * @param result    of the operation
+	 */
+	void record(Class<?> type, Operation operation, long start, long bytes, FileOperationResult result) {
+		recorders.get(type)[operation.ordinal()].record(System.nanoTime() - start, bytes, result);
+	}
+
+	/**
+	 * Gets how many times an operation was done for a type of file
+	 *
+	 * @param type      of the file, use <code>FileConstructor.class</code> for the
+	 *                  construction of files
+	 * @param operation to be checked
+	 *
+	 * @return the amount of operations
+	 */
+	public long getCount(Class<?> type, Operation operation) {
+		final Recorder[] recorders = types.get(type);
+		return recorders == null ? 0 : recorders[operation.ordinal()].count.sum();
+	}
+
+	/**
+	 * Gets how many times an operation ended with the given result for a type of
+	 * file
+	 *
+	 * @param type      of the file
+	 * @param operation to be checked
+	 * @param result    of the operations
+	 *
+	 * @return the amount of operations with that result
+	 */
+	public long getCount(Class<?> type, Operation operation, FileOperationResult result) {
+		final Recorder[] recorders = types.get(type);
+		return recorders == null ? 0 : recorders[operation.ordinal()].results[result.ordinal()].sum();
+	}
+
+	/**
+	 * Gets the bytes read or written by an operation for a type of file
+	 *
+	 * @param type      of the file
+	 * @param operation to be checked
+	 *
+	 * @return the amount of bytes
+	 */
+	public long getBytes(Class<?> type, Operation operation) {
+		final Recorder[] recorders = types.get(type);
+		return recorders == null ? 0 : recorders[operation.ordinal()].bytes.sum();
+	}
+
+	/**
+	 * Gets the latency below which the given fraction of the operations ended
+	 *
+	 * @param type       of the file
+	 * @param operation  to be checked
+	 * @param percentile between 0 and 1, like 0.99
+	 *
+	 * @return the latency in nanoseconds
+	 */
+	public long getLatency(Class<?> type, Operation operation, double percentile) {
+		final Recorder[] recorders = types.get(type);
+		return recorders == null ? 0 : recorders[operation.ordinal()].percentile(percentile);
+	}
+
+	@Override
+	public Map<String, Long> getOperations() {
+		final Map<String, Long> map = new TreeMap<>();
+		for (Map.Entry<Class<?>, Recorder[]> e : types.entrySet())
+			for (Operation operation : OPERATIONS)
+				if (e.getValue()[operation.ordinal()].count.sum() > 0)
+					map.put(key(e.getKey(), operation), e.getValue()[operation.ordinal()].count.sum());
+		return map;
+	}
+
+	@Override
+	public Map<String, Long> getResults() {
+		final Map<String, Long> map = new TreeMap<>();
+		for (Map.Entry<Class<?>, Recorder[]> e : types.entrySet())
+			for (Operation operation : OPERATIONS)
+				for (FileOperationResult result : RESULTS) {
+					final long count = e.getValue()[operation.ordinal()].results[result.ordinal()].sum();
+					if (count > 0)
+						map.put(key(e.getKey(), operation) + "." + result, count);
+				}
+		return map;
+	}
+
+	@Override
+	public Map<String, Long> getBytes() {
+		final Map<String, Long> map = new TreeMap<>();
+		for (Map.Entry<Class<?>, Recorder[]> e : types.entrySet())
+			for (Operation operation : OPERATIONS)
+				if (e.getValue()[operation.ordinal()].count.sum() > 0)
+					map.put(key(e.getKey(), operation), e.getValue()[operation.ordinal()].bytes.sum());
+		return map;
+	}
+
+	@Override
+	public Map<String, Long> getLatencyP50() {
+		return this.latencies(0.5);
+	}
+
+	@Override
+	public Map<String, Long> getLatencyP99() {
+		return this.latencies(0.99);
+	}
+
+	@Override
+	public Map<String, Long> getLatencyMax() {
+		final Map<String, Long> map = new TreeMap<>();
+		for (Map.Entry<Class<?>, Recorder[]> e : types.entrySet())
+			for (Operation operation : OPERATIONS)
+				if (e.getValue()[operation.ordinal()].count.sum() > 0)
+					map.put(key(e.getKey(), operation), e.getValue()[operation.ordinal()].max.get());
+		return map;
+	}
+
+	private Map<String, Long> latencies(double percentile) {
+		final Map<String, Long> map = new TreeMap<>();
+		for (Map.Entry<Class<?>, Recorder[]> e : types.entrySet())
+			for (Operation operation : OPERATIONS)
+				if (e.getValue()[operation.ordinal()].count.sum() > 0)
+					map.put(key(e.getKey(), operation), e.getValue()[operation.ordinal()].percentile(percentile));
+		return map;
+	}
+
+	private static String key(Class<?> type, Operation operation) {
+		return type.getSimpleName() + "." + operation;
+	}
+
+	@Override
+	public void reset() {
+		for (Recorder[] recorders : types.values())
+			for (Recorder recorder : recorders)
+				recorder.reset();
+	}
+
+}
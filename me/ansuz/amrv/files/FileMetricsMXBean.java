@@ -0,0 +1,55 @@
+package me.ansuz.amrv.files;
+
+import java.util.Map;
+
+/**
+ * Management interface of the metrics of the files, published on the platform
+ * MBean server as <code>me.ansuz.amrv.files:type=FileMetrics</code> while the
+ * metrics are enabled.
+ *
+ * <p>
+ * The keys of the maps are the type of the file followed by the operation,
+ * like <code>MapFile.SAVE</code>, latencies are given in nanoseconds.
+ * 
+ * @author Ansuz
+ *
+ */
+public interface FileMetricsMXBean {
+
+	/**
+	 * @return the amount of operations done for every type and operation
+	 */
+	Map<String, Long> getOperations();
+
+	/**
+	 * @return the amount of operations that ended with each result, the keys are
+	 *         followed by the result, like <code>MapFile.SAVE.IOERROR</code>
+	 */
+	Map<String, Long> getResults();
+
+	/**
+	 * @return the amount of bytes transferred by every type and operation
+	 */
+	Map<String, Long> getBytes();
+
+	/**
+	 * @return the median latency of every type and operation
+	 */
+	Map<String, Long> getLatencyP50();
+
+	/**
+	 * @return the 99th percentile latency of every type and operation
+	 */
+	Map<String, Long> getLatencyP99();
+
+	/**
+	 * @return the maximum latency of every type and operation
+	 */
+	Map<String, Long> getLatencyMax();
+
+	/**
+	 * Sets every metric back to zero
+	 */
+	void reset();
+
+}
@@ -0,0 +1,124 @@
+package me.ansuz.amrv.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * The attributes of a file at a given moment, used to know if a file changed
+ * without reading it again.
+ *
+ * <p>
+ * As some file systems only store the modification time in seconds, a hash of
+ * the contents can also be stored to detect changes that keep the same time and
+ * size.
+ * 
+ * @author Ansuz
+ *
+ */
+final class FileStamp {
+
+	private final FileTime modified;
+	private final long size;
+	private final Object key;
+	private long hash;
+
+	private FileStamp(FileTime modified, long size, Object key) {
+		this.modified = modified;
+		this.size = size;
+		this.key = key;
+	}
+
+	/**
+	 * Reads the attributes of the given file with a single call to the system
+	 * 
+	 * @param file to read the attributes from
+	 * 
+	 * @return the stamp of the file or null if the attributes cant be read
+	 */
+	static FileStamp of(File file) {
+		try {
+			final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			return new FileStamp(attributes.lastModifiedTime(), attributes.size(), attributes.fileKey());
+		} catch (IOException | UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Calculates a hash of the whole contents of the file
+	 * 
+	 * @param file to be hashed
+	 * 
+	 * @return the hash of the contents
+	 * 
+	 * @throws IOException if the file cant be read
+	 */
+	static long hash(File file) throws IOException {
+		final CRC32 crc = new CRC32();
+		final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				crc.update(buffer);
+				buffer.clear();
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Stores the hash of the contents of the file on this stamp
+	 * 
+	 * @param file the stamp was taken from
+	 * 
+	 * @return this same stamp
+	 * 
+	 * @throws IOException if the file cant be read
+	 */
+	FileStamp withHash(File file) throws IOException {
+		this.hash = hash(file);
+		return this;
+	}
+
+	/**
+	 * @return the hash stored with <code>withHash()</code> or 0 if there is none
+	 */
+	long hash() {
+		return hash;
+	}
+
+	/**
+	 * @return the size of the file when the stamp was taken
+	 */
+	long size() {
+		return size;
+	}
+
+	/**
+	 * @return the modification time of the file when the stamp was taken
+	 */
+	FileTime modified() {
+		return modified;
+	}
+
+	/**
+	 * Checks if both stamps have the same attributes, without comparing the hash
+	 * 
+	 * @param other stamp to compare with, can be null
+	 * 
+	 * @return true if the time, size and key of the file are the same
+	 */
+	boolean matches(FileStamp other) {
+		return other != null && size == other.size && modified.equals(other.modified)
+				&& Objects.equals(key, other.key);
+	}
+
+}
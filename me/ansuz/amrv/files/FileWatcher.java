@@ -0,0 +1,199 @@
+package me.ansuz.amrv.files;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import me.ansuz.amrv.files.BaseFile.FileOperationResult;
+import me.ansuz.amrv.files.FileManager.FileErrorMessage;
+import me.ansuz.amrv.files.FileManager.FileOperationMessage;
+
+/**
+ * Reloads the registered files whenever they change on the disk.
+ *
+ * <p>
+ * A single watch service and a single thread are used for every file, each
+ * directory is registered once no matter how many of its files are watched.
+ * As a single write usually triggers multiple events, a file is only reloaded
+ * once no more events arrived for it during the delay.
+ *
+ * <p>
+ * The reload holds the monitor of the file, so files that are not concurrent
+ * must be modified holding it too while watched.
+ * 
+ * @author Ansuz
+ *
+ */
+final class FileWatcher implements Runnable {
+
+	private final WatchService service;
+	private final Map<Path, WatchKey> directories = new HashMap<>();
+	private final Map<Path, Set<BaseFile>> files = new HashMap<>();
+	// Files that changed and the moment when they should be reloaded
+	private final Map<Path, Long> pending = new HashMap<>();
+	private volatile long delay;
+
+	/**
+	 * Creates the watcher and starts its thread
+	 * 
+	 * @param delay in milliseconds to wait for more changes before reloading
+	 * 
+	 * @throws IOException if the system does not provide a watch service
+	 */
+	FileWatcher(long delay) throws IOException {
+		this.service = FileSystems.getDefault().newWatchService();
+		this.delay = TimeUnit.MILLISECONDS.toNanos(delay);
+		final Thread thread = new Thread(this, "FileManager-Watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @param delay in milliseconds to wait for more changes before reloading
+	 */
+	void setDelay(long delay) {
+		this.delay = TimeUnit.MILLISECONDS.toNanos(delay);
+	}
+
+	/**
+	 * Starts watching a file, registering its directory if needed
+	 * 
+	 * @param file to be watched
+	 * 
+	 * @throws IOException if the directory cant be watched
+	 */
+	synchronized void register(BaseFile file) throws IOException {
+		final Path path = path(file);
+		final Path directory = path.getParent();
+		if (!directories.containsKey(directory))
+			directories.put(directory, directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY));
+		Set<BaseFile> watched = files.get(path);
+		if (watched == null)
+			files.put(path, watched = Collections.newSetFromMap(new IdentityHashMap<BaseFile, Boolean>()));
+		watched.add(file);
+	}
+
+	/**
+	 * Stops watching a file, its directory stops being watched if no other file
+	 * on it is
+	 * 
+	 * @param file to stop watching
+	 */
+	synchronized void unregister(BaseFile file) {
+		final Path path = path(file);
+		final Set<BaseFile> watched = files.get(path);
+		if (watched == null || !watched.remove(file) || !watched.isEmpty())
+			return;
+		files.remove(path);
+		pending.remove(path);
+		final Path directory = path.getParent();
+		for (Path other : files.keySet())
+			if (other.getParent().equals(directory))
+				return;
+		directories.remove(directory).cancel();
+	}
+
+	private static Path path(BaseFile file) {
+		return file.getFile().getAbsoluteFile().toPath().normalize();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				final WatchKey key = service.poll(this.timeout(), TimeUnit.NANOSECONDS);
+				if (key != null)
+					this.collect(key);
+				for (BaseFile file : this.due())
+					this.reload(file);
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// The watcher is no longer needed
+		}
+	}
+
+	/**
+	 * Reloads a file that changed on the disk unless it has unsaved changes, an
+	 * error on one file does not stop the others from being reloaded
+	 */
+	private void reload(BaseFile file) {
+		try {
+			final FileOperationResult result = file.refresh();
+			if (result == null)
+				FileManager.warn(FileOperationMessage.EXTERNAL_CHANGE, file.getName());
+			else if (result == FileOperationResult.IOERROR)
+				FileManager.error(FileErrorMessage.READING, file.getName());
+		} catch (RuntimeException e) {
+			FileManager.error(FileErrorMessage.READING, file.getName(), e);
+		}
+	}
+
+	/**
+	 * @return the time to wait for new events before the next file is due
+	 */
+	private synchronized long timeout() {
+		if (pending.isEmpty())
+			return Long.MAX_VALUE;
+		final long now = System.nanoTime();
+		long next = Long.MAX_VALUE;
+		for (long due : pending.values())
+			next = Math.min(next, due - now);
+		return Math.max(0, next);
+	}
+
+	/**
+	 * Marks every watched file from the events of the key as changed
+	 */
+	private synchronized void collect(WatchKey key) {
+		final Path directory = (Path) key.watchable();
+		final long due = System.nanoTime() + delay;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// Some events were lost so every file of the directory is checked
+				for (Path path : files.keySet())
+					if (path.getParent().equals(directory))
+						pending.put(path, due);
+			} else {
+				final Path path = directory.resolve((Path) event.context());
+				if (files.containsKey(path))
+					pending.put(path, due);
+			}
+		}
+		key.reset();
+	}
+
+	/**
+	 * Removes from the pending files the ones that have to be reloaded now
+	 * 
+	 * @return the files to be reloaded
+	 */
+	private synchronized List<BaseFile> due() {
+		final List<BaseFile> due = new ArrayList<>();
+		final long now = System.nanoTime();
+		final Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<Path, Long> entry = it.next();
+			if (entry.getValue() - now <= 0) {
+				due.addAll(files.get(entry.getKey()));
+				it.remove();
+			}
+		}
+		return due;
+	}
+
+}
@@ -15,17 +15,33 @@ public class ImageFile extends BaseFile {
 	private String extension;
 
 	protected ImageFile(File file) {
-		super(file);
+		this(file, false);
+	}
+
+	/**
+	 * Constructor of the image file that can delay decoding the image until it is
+	 * used, use
+	 * 
+	 * <pre>
+	 * FileManager.construct(file).lazy().toImageFile()
+	 * </pre>
+	 * 
+	 * instead
+	 * 
+	 * @param file
+	 * @param lazy if the image should not be decoded until it is used
+	 */
+	protected ImageFile(File file, boolean lazy) {
+		super(file, false);
+		if (!lazy)
+			this.reload();
 	}
 
 	@Override
 	protected boolean reloadProcess() {
 		try {
 			img = ImageIO.read(file);
-			if (this.isValidFormat())
-				extension = this.getExtension();
-			else
-				extension = "png";
+			extension = this.defaultEncoding();
 
 			if (img == null) {
 				img = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
@@ -33,12 +49,18 @@ public class ImageFile extends BaseFile {
 			}
 			return true;
 		} catch (IOException x) {
-			FileManager.error(FileErrorMessage.READING, file.getName());
-			x.printStackTrace();
+			FileManager.error(FileErrorMessage.READING, file.getName(), x);
 			return false;
 		}
 	}
 
+	/**
+	 * @return the extension of the file if it is a valid format or png
+	 */
+	private String defaultEncoding() {
+		return this.isValidFormat() ? this.getExtension() : "png";
+	}
+
 	/**
 	 * Checks if the extension of the file is calable of handle image files or not,
 	 * remember that this file will be able to read and write files that contain
@@ -69,7 +91,9 @@ public class ImageFile extends BaseFile {
 	 * @see ImageIO
 	 */
 	public void setSaveEncoding(String encoding) {
+		this.ensureLoaded();
 		this.extension = encoding.toLowerCase();
+		this.markDirty();
 	}
 
 	/**
@@ -84,6 +108,7 @@ public class ImageFile extends BaseFile {
 	 * @return a string containing the value (will always be on lowercase)
 	 */
 	public String getSaveEncoding(String encoding) {
+		this.ensureLoaded();
 		return extension;
 	}
 
@@ -93,15 +118,48 @@ public class ImageFile extends BaseFile {
 	 * problems with pixels and alpha values at the time of saving to different
 	 * formats
 	 *
+	 * <p>
+	 * The image can be modified so the file is considered modified after this,
+	 * use <code>getRGB(x, y)</code> or <code>copyImage()</code> to only read it
+	 *
 	 * @return a BufferedImage with the whole image from the file or a blank if the
 	 *         file couldnt retrieve the image
 	 *
 	 * @see ImageIO
 	 */
 	public BufferedImage getImage() {
+		this.ensureLoaded();
+		this.markDirty();
 		return img;
 	}
 
+	/**
+	 * Obtains a copy of the image that can be modified without modifying the file
+	 *
+	 * @return a BufferedImage with the same pixels and color model as the image
+	 *         of the file
+	 */
+	public BufferedImage copyImage() {
+		this.ensureLoaded();
+		return new BufferedImage(img.getColorModel(), img.copyData(null), img.isAlphaPremultiplied(), null);
+	}
+
+	/**
+	 * Obtains the color of a pixel of the image without considering the file
+	 * modified
+	 *
+	 * @param x coordinate of the pixel
+	 * @param y coordinate of the pixel
+	 *
+	 * @return the color of the pixel in the default RGB color model
+	 *
+	 * @see BufferedImage#getRGB(int, int)
+	 */
+	public int getRGB(int x, int y) {
+		this.ensureLoaded();
+		return img.getRGB(x, y);
+	}
+
 	/**
 	 * Sets the stored image on the file as a new one, this will override completly
 	 * the old image
@@ -109,7 +167,13 @@ public class ImageFile extends BaseFile {
 	 * @param image the buffered image to be set
 	 */
 	public void setImage(BufferedImage image) {
+		// A lazy image is not decoded just to be replaced
+		if (!this.isLoaded()) {
+			this.markLoaded();
+			extension = this.defaultEncoding();
+		}
 		img = image;
+		this.markDirty();
 	}
 
 	/**
@@ -118,6 +182,7 @@ public class ImageFile extends BaseFile {
 	 * @return the height, in pixels
 	 */
 	public int getHeight() {
+		this.ensureLoaded();
 		return img.getHeight();
 	}
 
@@ -127,6 +192,7 @@ public class ImageFile extends BaseFile {
 	 * @return the width, in pixels
 	 */
 	public int getWidth() {
+		this.ensureLoaded();
 		return img.getWidth();
 	}
 
@@ -137,6 +203,7 @@ public class ImageFile extends BaseFile {
 	 *         pixels
 	 */
 	public boolean hasAlpha() {
+		this.ensureLoaded();
 		return img.getColorModel().hasAlpha();
 	}
 
@@ -147,16 +214,21 @@ public class ImageFile extends BaseFile {
 	 */
 	@Override
 	public void clear() {
-		img.flush();
+		if (!this.isLoaded()) {
+			this.markLoaded();
+			extension = this.defaultEncoding();
+		} else
+			img.flush();
 		img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+		this.markDirty();
 	}
 
 	@Override
 	protected void buffersave() throws IOException {
 		final boolean useCache = ImageIO.getUseCache();
 		ImageIO.setUseCache(true);
-		if (!ImageIO.write(img, extension, file))
-			ImageIO.write(img, "png", file);
+		if (!ImageIO.write(img, extension, this.saveTarget()))
+			ImageIO.write(img, "png", this.saveTarget());
 		ImageIO.setUseCache(useCache);
 	}
 
@@ -164,8 +236,8 @@ public class ImageFile extends BaseFile {
 	protected void writersave() throws IOException {
 		final boolean useCache = ImageIO.getUseCache();
 		ImageIO.setUseCache(false);
-		if (!ImageIO.write(img, extension, file))
-			ImageIO.write(img, "png", file);
+		if (!ImageIO.write(img, extension, this.saveTarget()))
+			ImageIO.write(img, "png", this.saveTarget());
 		ImageIO.setUseCache(useCache);
 	}
 
@@ -0,0 +1,192 @@
+package me.ansuz.amrv.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A table with the position where every line of a file starts, so any line can
+ * be read without reading the ones before it.
+ *
+ * <p>
+ * The file is mapped into memory and scanned once in chunks that are processed
+ * in parallel, only the positions of the lines are kept on the heap so the
+ * memory used depends on the amount of lines and not on the size of the file.
+ *
+ * <p>
+ * Lines are split by <code>\n</code> with an optional <code>\r</code> before,
+ * so the charset must encode those characters as single bytes, like UTF-8 or
+ * any ISO-8859 charset do.
+ * 
+ * @author Ansuz
+ *
+ */
+final class LineIndex {
+
+	// Files smaller than this are scanned with a single thread
+	private static final long MIN_CHUNK = 1L << 20;
+
+	private final MappedRegions regions;
+	private final Charset charset;
+	private final long[] starts;
+	private final int count;
+
+	private LineIndex(MappedRegions regions, Charset charset, long[] starts, int count) {
+		this.regions = regions;
+		this.charset = charset;
+		this.starts = starts;
+		this.count = count;
+	}
+
+	/**
+	 * Maps and scans the given file to build the index of its lines
+	 * 
+	 * @param file    to be indexed
+	 * @param charset used to decode the lines
+	 * 
+	 * @return the index of the file
+	 * 
+	 * @throws IOException if the file cant be mapped or has more lines than a
+	 *                     list can hold
+	 */
+	static LineIndex build(File file, Charset charset) throws IOException {
+		final MappedRegions regions;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			regions = new MappedRegions(channel);
+		}
+		final long length = regions.length();
+		final int chunks = (int) Math.max(1,
+				Math.min(Runtime.getRuntime().availableProcessors(), length / MIN_CHUNK));
+		final long chunk = length / chunks;
+
+		// Every chunk collects the positions after each line break it contains
+		final long[][] found = IntStream.range(0, chunks).parallel().mapToObj(i -> {
+			final long from = i * chunk;
+			final long to = i == chunks - 1 ? length : from + chunk;
+			return scan(regions, from, to);
+		}).toArray(long[][]::new);
+
+		long total = length > 0 ? 1 : 0;
+		for (long[] positions : found)
+			total += positions[0];
+		if (total > Integer.MAX_VALUE)
+			throw new IOException("File " + file.getName() + " has too many lines to be indexed");
+
+		final long[] starts = new long[(int) total];
+		int count = 0;
+		if (length > 0)
+			starts[count++] = 0;
+		for (long[] positions : found) {
+			final int n = (int) positions[0];
+			System.arraycopy(positions, 1, starts, count, n);
+			count += n;
+		}
+		// A break at the very end of the file does not start a new line
+		if (count > 0 && starts[count - 1] == length)
+			count--;
+		return new LineIndex(regions, charset, starts, count);
+	}
+
+	/**
+	 * Finds every line break between the given positions
+	 * 
+	 * @return an array where the first element is the amount of positions found
+	 *         followed by the position after each line break
+	 */
+	private static long[] scan(MappedRegions regions, long from, long to) {
+		long[] positions = new long[1024];
+		int n = 1;
+		for (long i = from; i < to; i++) {
+			if (regions.get(i) == '\n') {
+				if (n == positions.length)
+					positions = Arrays.copyOf(positions, n + (n >> 1));
+				positions[n++] = i + 1;
+			}
+		}
+		positions[0] = n - 1;
+		return positions;
+	}
+
+	/**
+	 * Creates a spliterator that reads every line of the indexed file
+	 * 
+	 * @return a spliterator for the lines
+	 */
+	LineSpliterator spliterator() {
+		return new LineSpliterator(regions, charset, 0, regions.length());
+	}
+
+	/**
+	 * @return the amount of lines of the file
+	 */
+	int size() {
+		return count;
+	}
+
+	/**
+	 * Obtains the position where every line starts followed by the length of the
+	 * file
+	 * 
+	 * @return a new array with one more element than lines in the file
+	 */
+	long[] offsets() {
+		final long[] offsets = Arrays.copyOf(starts, count + 1);
+		offsets[count] = regions.length();
+		return offsets;
+	}
+
+	/**
+	 * Checks if the last line of the file ends with a line break
+	 * 
+	 * @return true if the file is empty or its last byte is a line break
+	 */
+	boolean terminated() {
+		return regions.length() == 0 || regions.get(regions.length() - 1) == '\n';
+	}
+
+	/**
+	 * Position of the first byte of a line
+	 * 
+	 * @param index of the line
+	 * 
+	 * @return the position in the file
+	 */
+	long start(final int index) {
+		return starts[index];
+	}
+
+	/**
+	 * Position after the last byte of a line, without counting its line break
+	 * 
+	 * @param index of the line
+	 * 
+	 * @return the position in the file
+	 */
+	long end(final int index) {
+		long end = index + 1 < count ? starts[index + 1] : regions.length();
+		if (end > starts[index] && regions.get(end - 1) == '\n')
+			end--;
+		if (end > starts[index] && regions.get(end - 1) == '\r')
+			end--;
+		return end;
+	}
+
+	/**
+	 * Reads and decodes a single line of the file
+	 * 
+	 * @param index of the line
+	 * 
+	 * @return the line without its line break
+	 */
+	String line(final int index) {
+		final long start = starts[index];
+		final byte[] bytes = new byte[(int) (end(index) - start)];
+		regions.get(start, bytes, 0, bytes.length);
+		return new String(bytes, charset);
+	}
+
+}
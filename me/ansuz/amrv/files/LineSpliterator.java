@@ -0,0 +1,89 @@
+package me.ansuz.amrv.files;
+
+import java.nio.charset.Charset;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Iterates the lines of a file mapped into memory, the lines are decoded one by
+ * one as they are requested so no matter how big the file is, only the line
+ * being used is holded on the heap.
+ *
+ * <p>
+ * The spliterator can be split at the line break closest to the middle of the
+ * range it still has to read, so parallel streams can process different
+ * chunks of the file at the same time.
+ *
+ * @author Ansuz
+ *
+ */
+final class LineSpliterator implements Spliterator<String> {
+
+	// Ranges smaller than this are not worth splitting
+	private static final long MIN_SPLIT = 1L << 16;
+	// Guess of the average line length used to estimate the remaining lines
+	private static final long AVERAGE_LINE = 64;
+
+	private final MappedRegions regions;
+	private final Charset charset;
+	private long position;
+	private final long end;
+
+	/**
+	 * Creates a spliterator for the lines inside the given range, the range must
+	 * start at the beginning of a line
+	 *
+	 * @param regions  mapped file to read the lines from
+	 * @param charset  used to decode the lines
+	 * @param position of the first line to be read
+	 * @param end      position after the last byte to be read
+	 */
+	LineSpliterator(MappedRegions regions, Charset charset, long position, long end) {
+		this.regions = regions;
+		this.charset = charset;
+		this.position = position;
+		this.end = end;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super String> action) {
+		if (position >= end)
+			return false;
+		long stop = position;
+		while (stop < end && regions.get(stop) != '\n')
+			stop++;
+		final long next = stop < end ? stop + 1 : end;
+		if (stop > position && regions.get(stop - 1) == '\r')
+			stop--;
+		final byte[] bytes = new byte[(int) (stop - position)];
+		regions.get(position, bytes, 0, bytes.length);
+		position = next;
+		action.accept(new String(bytes, charset));
+		return true;
+	}
+
+	@Override
+	public Spliterator<String> trySplit() {
+		if (end - position < MIN_SPLIT)
+			return null;
+		long split = position + (end - position) / 2;
+		while (split < end && regions.get(split - 1) != '\n')
+			split++;
+		if (split >= end)
+			return null;
+		final Spliterator<String> prefix = new LineSpliterator(regions, charset, position, split);
+		position = split;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return (end - position + AVERAGE_LINE - 1) / AVERAGE_LINE;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+
+}
@@ -1,13 +1,26 @@
 package me.ansuz.amrv.files;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import me.ansuz.amrv.files.FileLogger.Level;
+import me.ansuz.amrv.files.FileManager.FileErrorMessage;
 
 /**
  * A file handler provided by the file manager for easier file operations, this
@@ -19,7 +32,55 @@ import java.util.List;
  */
 public class ListFile extends BaseFile {
 
-	private List<String> data = new ArrayList<String>();
+	/**
+	 * Options that change how the list file holds its lines
+	 */
+	public enum Option {
+		/**
+		 * The lines are not loaded, instead the file is mapped into memory and only
+		 * the position of each line is kept, so every line is read from the file
+		 * when requested. The memory used depends on the amount of lines and not on
+		 * the size of the file, useful for huge files that are mostly readed.
+		 * 
+		 * <p>
+		 * Modifying an indexed file will load all of its lines into memory.
+		 */
+		INDEXED,
+		/**
+		 * The file can be used by many threads at the same time without any
+		 * external lock. Reading lines never blocks unless they are being changed
+		 * at that moment, changes and reloads are exclusive and saves only block the
+		 * changes, so the file is always written with the lines of a single moment.
+		 * Iterating goes through a copy of the lines taken when the iteration
+		 * starts.
+		 * 
+		 * <p>
+		 * Saves, reloads and deletes must still happen one after another, like the
+		 * asynchronous ones do.
+		 */
+		CONCURRENT
+	}
+
+	private final boolean indexed;
+	private final Charset charset;
+	// Only one of them is used at a time, the index is dropped once the lines are
+	// loaded into the list
+	private List<String> data;
+	private LineIndex index;
+
+	// Lines before this one are on the file and have not been modified
+	private int persisted;
+	// First line on the file that has been modified since the last save
+	private int modified;
+	// Position on the file of every persisted line, followed by the file length,
+	// or null if the lines were read without keeping their positions
+	private long[] offsets;
+	// If the last persisted line ends with a line break
+	private boolean terminated;
+	// Lock of the lines or null if the file is not shared between threads
+	private final FileLock lock;
+	// Version of the lines being saved or reloaded
+	private long saving;
 
 	/**
 	 * Constructor of the list file, you must use
@@ -33,29 +94,119 @@ public class ListFile extends BaseFile {
 	 * @param file
 	 */
 	protected ListFile(File file) {
-		super(file);
+		this(file, new Option[0]);
+	}
+
+	/**
+	 * Constructor of the list file with the given options, you must use
+	 * 
+	 * <pre>
+	 * FileManager.construct(file).toListFile(options)
+	 * </pre>
+	 * 
+	 * instead
+	 * 
+	 * @param file
+	 * @param options that change how the file is managed
+	 */
+	protected ListFile(File file, Option... options) {
+		this(file, false, options);
+	}
+
+	/**
+	 * Constructor of the list file that can delay reading the file until its
+	 * lines are used, you must use
+	 * 
+	 * <pre>
+	 * FileManager.construct(file).lazy().toListFile(options)
+	 * </pre>
+	 * 
+	 * instead
+	 * 
+	 * @param file
+	 * @param lazy    if the file should not be read until its lines are used
+	 * @param options that change how the file is managed
+	 */
+	protected ListFile(File file, boolean lazy, Option... options) {
+		super(file, false);
+		this.indexed = Arrays.asList(options).contains(Option.INDEXED);
+		this.lock = Arrays.asList(options).contains(Option.CONCURRENT) ? new FileLock() : null;
+		this.charset = Charset.defaultCharset();
+		this.data = new ArrayList<String>();
+		this.offsets = new long[] { 0 };
+		this.terminated = true;
+		if (!lazy)
+			this.reload();
 	}
 
 	@Override
 	protected boolean reloadProcess() {
-		if (data == null)
-			data = new ArrayList<String>();
-		try {
-			BufferedReader reader = new BufferedReader(new FileReader(file));
-
-			while (reader.ready()) {
-				data.add(reader.readLine());
-			}
+		if (indexed)
+			return this.reloadIndex();
+		final List<String> lines = new ArrayList<String>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset))) {
+			String line;
+			while ((line = reader.readLine()) != null)
+				lines.add(line);
+		} catch (IOException e) {
+			FileManager.error(FileErrorMessage.READING, file.getName(), e);
+			return false;
+		}
+		this.change(() -> {
+			// A change done after the watcher checked the file is not replaced
+			if (lock != null && this.keep(lock.version() - 1 != saving))
+				return;
+			index = null;
+			data = lines;
+			// The reader does not tell where each line starts, so the first save
+			// writes the whole file
+			offsets = null;
+			persisted = lines.size();
+			modified = persisted;
+			terminated = true;
+			if (lock != null)
+				saving = lock.version();
+		});
+		return true;
+	}
 
-			reader.close();
-			return true;
-		} catch (Exception e) {
-			if (FileManager.isDebugEnabled())
-				System.err.println(
-						FileManager.WARNING + "file " + file.getName() + " got an error while reading the file");
-			e.printStackTrace();
-			return true;
+	/**
+	 * Reads the position of every line of an indexed file without loading them
+	 */
+	private boolean reloadIndex() {
+		final LineIndex built;
+		try {
+			built = LineIndex.build(file, charset);
+		} catch (IOException e) {
+			FileManager.error(FileErrorMessage.READING, file.getName(), e);
+			return false;
 		}
+		this.change(() -> {
+			// A change done after the watcher checked the file is not replaced
+			if (lock != null && this.keep(lock.version() - 1 != saving))
+				return;
+			index = built;
+			data = null;
+			offsets = null;
+			persisted = index.size();
+			modified = persisted;
+			terminated = index.terminated();
+			// Taken holding the lock, so the changes done after this are not lost
+			// when the file is marked as not modified
+			if (lock != null)
+				saving = lock.version();
+		});
+		return true;
+	}
+
+	/**
+	 * Runs a change of the lines, holding the lock if the file is concurrent
+	 */
+	private void change(final Runnable change) {
+		if (lock == null)
+			change.run();
+		else
+			lock.write(change);
 	}
 
 	/**
@@ -74,8 +225,17 @@ public class ListFile extends BaseFile {
 	 * @param field the key of the list
 	 */
 	public String getData(final int index) {
-		if (index < 0 || index > data.size())
+		this.ensureLoaded();
+		if (lock == null)
+			return this.line(index);
+		return lock.read(() -> this.line(index));
+	}
+
+	private String line(final int index) {
+		if (index < 0 || index >= this.count())
 			return "";
+		else if (data == null)
+			return this.index.line(index);
 		else
 			return data.get(index);
 	}
@@ -86,7 +246,94 @@ public class ListFile extends BaseFile {
 	 * @return the length as a integer
 	 */
 	public int length() {
-		return data.size();
+		this.ensureLoaded();
+		if (lock == null)
+			return this.count();
+		return lock.readInt(this::count);
+	}
+
+	private int count() {
+		return data == null ? index.size() : data.size();
+	}
+
+	/**
+	 * Obtains a spliterator over the lines of the file, if the file is indexed the
+	 * lines are read from the file as they are used, so the list is never loaded
+	 * into memory. The spliterator can be split so parallel streams can read
+	 * different chunks of the file at the same time.
+	 * 
+	 * @return a spliterator for every line of the file
+	 */
+	public Spliterator<String> spliterator() {
+		this.ensureLoaded();
+		if (lock == null)
+			return data == null ? index.spliterator() : data.spliterator();
+		// The index is never modified, the loaded lines are copied
+		return lock.read(() -> data == null ? index.spliterator()
+				: Arrays.asList(data.toArray(new String[data.size()])).spliterator());
+	}
+
+	/**
+	 * Obtains a stream with every line of the file, if the file is indexed the
+	 * lines are read from the file as they are used
+	 * 
+	 * <p>
+	 * Use <code>lines().parallel()</code> to process the file in multiple chunks
+	 * at the same time
+	 * 
+	 * @return a sequential stream of the lines
+	 */
+	public Stream<String> lines() {
+		return StreamSupport.stream(this.spliterator(), false);
+	}
+
+	/**
+	 * Calls the given action for every line of the file in order
+	 * 
+	 * @param action to be called with every line
+	 */
+	public void forEachLine(final Consumer<String> action) {
+		this.spliterator().forEachRemaining(action);
+	}
+
+	/**
+	 * Checks if the lines are read from the file when requested instead of being
+	 * holded in memory
+	 * 
+	 * @return true if the file was created as indexed and has not been modified
+	 *         yet
+	 */
+	public boolean isIndexed() {
+		this.ensureLoaded();
+		if (lock == null)
+			return data == null;
+		return lock.read(() -> data == null);
+	}
+
+	/**
+	 * Checks if the file can be used by many threads at the same time
+	 * 
+	 * @see Option#CONCURRENT
+	 * 
+	 * @return true if the file was created as concurrent
+	 */
+	public boolean isConcurrent() {
+		return lock != null;
+	}
+
+	/**
+	 * Loads every line of an indexed file into the list so it can be modified,
+	 * the file must be already loaded
+	 */
+	private void load() {
+		if (data != null)
+			return;
+		final List<String> lines = new ArrayList<String>(index.size());
+		for (int i = 0; i < index.size(); i++)
+			lines.add(index.line(i));
+		data = lines;
+		offsets = index.offsets();
+		index = null;
 	}
 	
 	/**
@@ -110,14 +357,31 @@ public class ListFile extends BaseFile {
 	 *                  bounds
 	 */
 	public void setData(final int index, final String data, final boolean addIfNull) {
-		if (index < 0 || index >= this.data.size())
-			if (addIfNull)
-				this.addnewLine(data);
-			else
-				System.err.println(
-						"ListFile: " + file.getName() + " \"setData(" + index + ")\" wasnt added, INVALID INDEX");
-		else
-			this.data.set(index, data);
+		this.ensureLoaded();
+		this.change(() -> {
+			this.load();
+			if (index < 0 || index >= this.data.size()) {
+				if (addIfNull)
+					this.add(data);
+				else if (FileManager.logger().isEnabled(Level.WARNING))
+					FileManager.logger().log(Level.WARNING, "ListFile: " + file.getName() + " \"setData(" + index
+							+ ")\" wasnt added, INVALID INDEX", null);
+			} else {
+				this.data.set(index, data);
+				this.modified(index);
+			}
+		});
+	}
+
+	/**
+	 * Marks a line as modified so the next save will write the file from it
+	 * 
+	 * @param index of the line that changed
+	 */
+	private void modified(final int index) {
+		if (index < modified)
+			modified = index;
+		this.markDirty();
 	}
 
 	/**
@@ -128,8 +392,14 @@ public class ListFile extends BaseFile {
 	 * @param data a string containing the data to be added
 	 */
 	public void addnewLine(final String data) {
+		this.ensureLoaded();
+		this.change(() -> this.add(data));
+	}
+
+	private void add(final String data) {
+		this.load();
 		this.data.add(data);
-		return;
+		this.markDirty();
 	}
 
 	/**
@@ -138,8 +408,13 @@ public class ListFile extends BaseFile {
 	 * @param data to add to the list
 	 */
 	public void appendData(final String data) {
-		int loc = this.data.size() - 1;
-		this.data.set(loc, this.data.get(loc) + data);
+		this.ensureLoaded();
+		this.change(() -> {
+			this.load();
+			int loc = this.data.size() - 1;
+			this.data.set(loc, this.data.get(loc) + data);
+			this.modified(loc);
+		});
 	}
 
 	/**
@@ -149,31 +424,160 @@ public class ListFile extends BaseFile {
 	 * @param data  to append to an already existing string of the list
 	 */
 	public void appendData(final int index, final String data) {
-		if (index > 0 && index < this.data.size())
-			this.data.set(index, this.data.get(index) + data);
+		this.ensureLoaded();
+		this.change(() -> {
+			this.load();
+			if (index > 0 && index < this.data.size()) {
+				this.data.set(index, this.data.get(index) + data);
+				this.modified(index);
+			}
+		});
 	}
 
 	@Override
 	public void clear() {
-		data.clear();
+		// A lazy file is not read just to be cleared, it was created holding no
+		// lines so the whole file is written on the next save
+		this.markLoaded();
+		this.change(() -> {
+			if (data == null) {
+				offsets = index.offsets();
+				index = null;
+				data = new ArrayList<String>();
+			} else
+				data.clear();
+			modified = 0;
+			this.markDirty();
+		});
+	}
+
+	@Override
+	void saved() {
+		super.saved();
+		// The changes done after the lines were written are not saved
+		if (lock != null && lock.version() != saving)
+			this.markDirty();
+	}
+
+	@Override
+	void reloaded() {
+		// The changes done after the lines were replaced are not on the file
+		if (lock != null && lock.version() != saving)
+			this.markDirty();
 	}
 
 	@Override
 	protected final void buffersave() throws IOException {
-		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-		for (String line : data) {
-			writer.write(line + "\n");
-		}
-		writer.close();
+		this.write(true);
 	}
 
 	@Override
 	protected final void writersave() throws IOException {
-		FileWriter writer = new FileWriter(file);
-		for (String line : data) {
-			writer.write(line + "\n");
+		this.write(false);
+	}
+
+	/**
+	 * Writes the lines, blocking the changes of concurrent files while they are
+	 * written
+	 * 
+	 * @param buffered if the lines should be written through a buffer
+	 * 
+	 * @throws IOException if the file cant be written
+	 */
+	private void write(final boolean buffered) throws IOException {
+		if (lock == null) {
+			this.write(this.saveTarget(), buffered);
+			return;
+		}
+		// Loading the lines changes what the readers see, so it can not be done
+		// while the lock is only shared
+		if (this.saveTarget() != file && lock.read(() -> data == null))
+			lock.write(this::load);
+		final long stamp = lock.share();
+		try {
+			saving = lock.version();
+			this.write(this.saveTarget(), buffered);
+		} finally {
+			lock.unshare(stamp);
+		}
+	}
+
+	/**
+	 * Writes the lines that changed since the last save, if lines were only added
+	 * they are appended to the file, otherwise the file is rewritten from the
+	 * first modified line, the lines before it are never written again.
+	 * 
+	 * <p>
+	 * If the position of the lines is not known, or the file was modified by
+	 * someone else since it was last readed or written, the whole file is
+	 * rewritten
+	 * 
+	 * @param target   file to be written
+	 * @param buffered if the lines should be written through a buffer
+	 * 
+	 * @throws IOException if the file cant be written
+	 */
+	private void write(final File target, final boolean buffered) throws IOException {
+		// An indexed file that was never modified already holds these same lines,
+		// unless they are being written to a new file
+		if (data == null) {
+			if (target == file) {
+				this.wrote(0);
+				return;
+			}
+			this.load();
+		}
+		int from = Math.min(Math.min(modified, persisted), data.size());
+		if (from == persisted && !terminated)
+			from--;
+		// A temporal file for an atomic save is empty so every line is written
+		final boolean stale = offsets == null || target != file || !this.isUnchanged()
+				|| file.length() != offsets[persisted];
+		if (stale)
+			from = 0;
+		else if (from == data.size() && from == persisted) {
+			this.wrote(0);
+			return;
+		}
+
+		final long start = stale ? 0 : offsets[from];
+		long position = start;
+		final boolean append = from == persisted && !stale;
+		final long[] written;
+		if (offsets == null)
+			written = new long[data.size() + 1];
+		else if (offsets.length > data.size())
+			written = offsets;
+		else
+			written = Arrays.copyOf(offsets, Math.max(data.size() + 1, offsets.length + (offsets.length >> 1)));
+		try (FileChannel channel = append ? FileChannel.open(target.toPath(), StandardOpenOption.APPEND)
+				: FileChannel.open(target.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+			if (!append) {
+				channel.truncate(position);
+				channel.position(position);
+			}
+			OutputStream out = Channels.newOutputStream(channel);
+			if (buffered)
+				out = new BufferedOutputStream(out);
+			for (int i = from; i < data.size(); i++) {
+				final byte[] bytes = data.get(i).getBytes(charset);
+				written[i] = position;
+				out.write(bytes);
+				out.write('\n');
+				position += bytes.length + 1;
+			}
+			written[data.size()] = position;
+			out.flush();
+			this.wrote(position - start);
+		} catch (IOException e) {
+			// The offsets can no longer be trusted so the next save rewrites everything
+			modified = 0;
+			throw e;
 		}
-		writer.close();
+		offsets = written;
+		persisted = data.size();
+		modified = persisted;
+		terminated = true;
 	}
 
 }
@@ -6,10 +6,33 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import me.ansuz.amrv.files.FileManager.FileErrorMessage;
+import me.ansuz.amrv.files.FileManager.FileOperationMessage;
 
 /**
  * A file handler provided by the file manager for easier file operations, this
@@ -21,7 +44,137 @@ import java.util.Set;
  */
 public class MapFile extends BaseFile {
 
-	private Map<String, String> values = new HashMap<>();
+	/**
+	 * Options that change how the map file is saved
+	 */
+	public enum Option {
+		/**
+		 * Every change is logged on a sidecar file named like the file with
+		 * <code>.journal</code> at the end, saving only appends the changes done
+		 * since the last save to it and forces them to the disk, so saving a huge
+		 * map after changing a few values is cheap and a crash never loses a saved
+		 * change.
+		 * 
+		 * <p>
+		 * When the log grows bigger than the file it is merged back into the file
+		 * in the background. The log is always replayed when the file is loaded.
+		 */
+		JOURNALED,
+		/**
+		 * A binary copy of the entries is written on a sidecar file named like the
+		 * file with <code>.snapshot</code> at the end every time the file is
+		 * written, loading the file reads that copy instead of parsing the text
+		 * while the file was not changed by anyone else, which is much faster for
+		 * big maps.
+		 */
+		SNAPSHOT,
+		/**
+		 * The entries are not loaded into the heap, instead they are kept on a hash
+		 * table in a sidecar file named like the file with <code>.index</code> at
+		 * the end, mapped into memory, so the memory used does not depend on the
+		 * amount of entries and looking for a key only reads that entry. Useful for
+		 * maps far bigger than the heap.
+		 * 
+		 * <p>
+		 * The text file is only read when it changed since it was last saved, and
+		 * saving writes the whole text file from the table. The changes are on the
+		 * table as soon as they are done but the table is imported again from the
+		 * text file if those changes are not saved.
+		 * 
+		 * <p>
+		 * The other options are ignored with this one.
+		 */
+		DISK,
+		/**
+		 * The map can be used by many threads at the same time without any
+		 * external lock. Getting values never blocks, changing them only blocks
+		 * while the map is being cleared, reloaded or copied to be saved, and many
+		 * threads can change it at the same time.
+		 * 
+		 * <p>
+		 * Saving copies the entries, which is the only moment the map can not be
+		 * changed, and writes the copy while the other threads keep using the map.
+		 * The changes done after the copy are not saved and leave the file dirty
+		 * for the next save. Reloading reads the file into a new map that replaces
+		 * the current one at once, so readers never see it half loaded.
+		 * 
+		 * <p>
+		 * Saves, reloads and deletes of the same file must still happen one after
+		 * another, like the asynchronous ones do. Null values are not allowed.
+		 * Ignored with <code>DISK</code>.
+		 */
+		CONCURRENT
+	}
+
+	// Logs smaller than this are never merged into the file
+	private static final long COMPACTION_MINIMUM = 1L << 16;
+	// Types a value was parsed as
+	private static final int NUMBER = 1, REAL = 2, BOOLEAN = 4, DURATION = 8, LIST = 16;
+
+	/**
+	 * A value already parsed as one or more types, only valid while the map holds
+	 * that same string.
+	 *
+	 * <p>
+	 * The parsed value of a type is written before the state marks the type as
+	 * parsed, so other threads never see a type parsed without its value. Two
+	 * threads parsing at the same time may lose the mark of one of them, that type
+	 * is just parsed again.
+	 */
+	private static final class Parsed {
+		private final String source;
+		// Types already parsed, and shifted by 8 the ones that could not be parsed
+		private volatile int state;
+		private long number;
+		private double real;
+		private boolean bool;
+		private Duration duration;
+		private List<String> list;
+
+		private Parsed(String source) {
+			this.source = source;
+		}
+
+		private boolean parsed(int type) {
+			return (state & type) != 0;
+		}
+
+		/**
+		 * @return true if the value could be parsed as the type
+		 */
+		private boolean valid(int type) {
+			return (state & type << 8) == 0;
+		}
+
+		private void parsed(int type, boolean valid) {
+			state |= valid ? type : type | type << 8;
+		}
+	}
+
+	// Replaced on reloads of concurrent maps, readers must only read it once
+	private volatile Map<String, String> values;
+	// Log of the changes or null if the file is not journaled
+	private final MapJournal journal;
+	// Binary copy of the file or null if the file does not keep one
+	private final File snapshot;
+	// Table holding the values or null if they are on the heap
+	private final DiskMap disk;
+	// If the map was changed without being logged so the whole map must be logged
+	private volatile boolean rewrite;
+	private double compactionRatio = 1.0;
+	// Values parsed by the typed getters, never used by disk maps
+	private final Map<String, Parsed> parsed;
+	// Sorted keys of the map, built on the first prefix lookup and changed with
+	// the map after that. Never built for disk maps, their keys are not kept on
+	// the heap
+	private volatile NavigableSet<String> sorted;
+	// Shared by the threads changing a concurrent map and exclusive to clear,
+	// reload and copy it, or null if the map is not concurrent
+	private final ReadWriteLock lock;
+	// Changes done to a concurrent map and how many of them were saved or
+	// reloaded
+	private final LongAdder modifications;
+	private long saving;
 
 	/**
 	 * Constructor of the map file, you must use
@@ -35,36 +188,199 @@ public class MapFile extends BaseFile {
 	 * @param file
 	 */
 	protected MapFile(File file) {
-		super(file);
+		this(file, false);
+	}
+
+	/**
+	 * Constructor of the map file with the given options, you must use
+	 * 
+	 * <pre>
+	 * FileManager.construct(file).toMapFile(options)
+	 * </pre>
+	 * 
+	 * instead
+	 * 
+	 * @param file
+	 * @param options that change how the file is saved
+	 */
+	protected MapFile(File file, Option... options) {
+		this(file, false, options);
+	}
+
+	/**
+	 * Constructor of the map file that can delay reading the file until its
+	 * values are used, you must use
+	 * 
+	 * <pre>
+	 * FileManager.construct(file).lazy().toMapFile()
+	 * </pre>
+	 * 
+	 * instead
+	 * 
+	 * @param file
+	 * @param lazy    if the file should not be read until its values are used
+	 * @param options that change how the file is saved
+	 */
+	protected MapFile(File file, boolean lazy, Option... options) {
+		super(file, false);
+		final List<Option> list = Arrays.asList(options);
+		this.disk = list.contains(Option.DISK) ? new DiskMap(file) : null;
+		final boolean concurrent = disk == null && list.contains(Option.CONCURRENT);
+		this.lock = concurrent ? new ReentrantReadWriteLock() : null;
+		this.modifications = concurrent ? new LongAdder() : null;
+		this.parsed = concurrent ? new ConcurrentHashMap<String, Parsed>() : new HashMap<String, Parsed>();
+		if (disk != null)
+			this.values = disk;
+		else
+			this.values = concurrent ? new ConcurrentHashMap<String, String>() : new HashMap<String, String>();
+		this.journal = disk == null && list.contains(Option.JOURNALED) ? new MapJournal(file) : null;
+		this.snapshot = disk == null && list.contains(Option.SNAPSHOT) ? MapSnapshot.of(file) : null;
+		if (!lazy)
+			this.reload();
 	}
 
 	@Override
 	protected boolean reloadProcess() {
 		if (!file.canRead()) {
-			System.err.println("Cant read file " + file.getName() + " access blocked");
+			FileManager.warn(FileOperationMessage.CANT_READ, file.getName());
 			return false;
 		}
+		if (lock != null)
+			return this.swap();
+		rewrite = false;
+		parsed.clear();
+		sorted = null;
+		if (disk != null)
+			return this.open();
+		values.clear();
+		return this.load(values);
+	}
+
+	/**
+	 * Loads a concurrent map into a new map and replaces the current one with it
+	 */
+	private boolean swap() {
+		final Map<String, String> loading = new ConcurrentHashMap<String, String>();
+		if (!this.load(loading))
+			return false;
+		lock.writeLock().lock();
 		try {
-			BufferedReader reader = new BufferedReader(new FileReader(file));
-			while (reader.ready()) {
-				this.parse(reader.readLine());
+			// A change done after the watcher checked the map is not replaced
+			if (this.keep(modifications.sum() != saving))
+				return true;
+			values = loading;
+			rewrite = false;
+			parsed.clear();
+			sorted = null;
+			// The changes done while loading were done to the replaced map
+			if (journal != null)
+				journal.discard();
+			modifications.increment();
+			// Taken holding the lock, so the changes done after this are not lost
+			// when the file is marked as not modified
+			saving = modifications.sum();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the file and replays the log if the file is journaled
+	 */
+	private boolean load(final Map<String, String> values) {
+		if (journal == null)
+			return this.read(values);
+		// A compaction can not replace the file and trim the log in the middle
+		synchronized (journal) {
+			if (!this.read(values))
+				return false;
+			try {
+				journal.discard();
+				this.readBytes(journal.replay(values));
+				return true;
+			} catch (IOException e) {
+				FileManager.error(FileErrorMessage.READING, journal.file().getName(), e);
+				return false;
 			}
-			reader.close();
+		}
+	}
+
+	/**
+	 * Opens the table of a disk map, importing the text file into it if the table
+	 * is not up to date
+	 */
+	private boolean open() {
+		try {
+			// The table is mapped, its entries are only read when used
+			if (disk.open(file)) {
+				this.readBytes(0);
+				return true;
+			}
+			disk.clear();
+			if (!this.read(disk))
+				return false;
+			disk.saved(file);
 			return true;
-		} catch (IOException e) {
-			e.printStackTrace();
+		} catch (IOException | IllegalStateException e) {
+			FileManager.error(FileErrorMessage.READING, disk.file().getName(), e);
+			return false;
+		}
+	}
+
+	private boolean read(final Map<String, String> values) {
+		if (snapshot != null && MapSnapshot.read(snapshot, file, values)) {
+			this.readBytes(snapshot.length());
 			return true;
 		}
+		final long length = file.length();
+		this.readBytes(length);
+		final Charset charset = Charset.defaultCharset();
+		if (length >= MapParser.MINIMUM_LENGTH && MapParser.supports(charset))
+			try {
+				// A disk map would hold every chunk on the heap before merging them
+				MapParser.parse(file, charset, values, disk == null);
+				this.snapshot(file, values);
+				return true;
+			} catch (IOException e) {
+				FileManager.error(FileErrorMessage.READING, file.getName(), e);
+				return false;
+			}
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = reader.readLine()) != null)
+				parse(line, values);
+		} catch (IOException e) {
+			FileManager.error(FileErrorMessage.READING, file.getName(), e);
+			return false;
+		}
+		// The file changed since the snapshot was written so it is written again
+		this.snapshot(file, values);
+		return true;
 	}
 
-	private final void parse(String string) {
-		if (values == null)
-			values = new HashMap<String,String>();
-		if (string.startsWith("#") || string.startsWith("//") || !string.contains("="))
+	/**
+	 * Writes the snapshot of the given file if the file keeps one, the file is
+	 * still usable without it so it only reports the errors
+	 */
+	private void snapshot(final File source, final Map<String, String> values) {
+		if (snapshot == null)
 			return;
+		try {
+			MapSnapshot.write(snapshot, source, values);
+		} catch (IOException e) {
+			FileManager.error(FileErrorMessage.SAVING, snapshot.getName(), e);
+		}
+	}
+
+	private static void parse(String string, final Map<String, String> values) {
 		string = string.trim();
-		final int index = string.indexOf("=");
-		values.put(string.substring(0, index), string.substring(index));
+		if (string.startsWith("#") || string.startsWith("//"))
+			return;
+		final int index = string.indexOf('=');
+		if (index < 0)
+			return;
+		values.put(string.substring(0, index).trim(), string.substring(index + 1).trim());
 	}
 
 	/**
@@ -83,10 +399,407 @@ public class MapFile extends BaseFile {
 	 * @param field the key of the map
 	 */
 	public String get(final String field) {
-		if (!values.isEmpty() && values.containsKey(field))
-			return values.get(field);
-		else
-			return "";
+		this.ensureLoaded();
+		final String value = values.get(field);
+		return value == null ? "" : value;
+	}
+
+	/**
+	 * Gets the parsed form of a value, the same one is returned while the value
+	 * does not change so every type is only parsed once
+	 * 
+	 * @return the parsed value or null if the map does not contain the key
+	 */
+	private Parsed parsed(final String key) {
+		this.ensureLoaded();
+		final String value = values.get(key);
+		if (value == null)
+			return null;
+		// A disk map would hold every parsed value on the heap
+		if (disk != null)
+			return new Parsed(value);
+		Parsed current = parsed.get(key);
+		if (current == null || current.source != value) {
+			current = new Parsed(value);
+			parsed.put(key, current);
+		}
+		return current;
+	}
+
+	/**
+	 * Parses the value as a long if it was not yet
+	 * 
+	 * @return true if the value is a valid long
+	 */
+	private static boolean number(final Parsed value) {
+		if (!value.parsed(NUMBER))
+			try {
+				value.number = Long.parseLong(value.source.trim());
+				value.parsed(NUMBER, true);
+			} catch (NumberFormatException e) {
+				value.parsed(NUMBER, false);
+			}
+		return value.valid(NUMBER);
+	}
+
+	/**
+	 * Gets the value of the key as an int, the value is only parsed the first time
+	 * it is requested after it changes
+	 * 
+	 * @param key          of the value
+	 * @param defaultValue returned if the map does not contain the key or the
+	 *                     value is not an int
+	 * 
+	 * @return the value as an int
+	 */
+	public int getInt(final String key, final int defaultValue) {
+		final Parsed value = this.parsed(key);
+		if (value == null || !number(value) || value.number != (int) value.number)
+			return defaultValue;
+		return (int) value.number;
+	}
+
+	/**
+	 * Gets the value of the key as a long, the value is only parsed the first
+	 * time it is requested after it changes
+	 * 
+	 * @param key          of the value
+	 * @param defaultValue returned if the map does not contain the key or the
+	 *                     value is not a long
+	 * 
+	 * @return the value as a long
+	 */
+	public long getLong(final String key, final long defaultValue) {
+		final Parsed value = this.parsed(key);
+		if (value == null || !number(value))
+			return defaultValue;
+		return value.number;
+	}
+
+	/**
+	 * Gets the value of the key as a double, the value is only parsed the first
+	 * time it is requested after it changes
+	 * 
+	 * @param key          of the value
+	 * @param defaultValue returned if the map does not contain the key or the
+	 *                     value is not a number
+	 * 
+	 * @return the value as a double
+	 */
+	public double getDouble(final String key, final double defaultValue) {
+		final Parsed value = this.parsed(key);
+		if (value == null)
+			return defaultValue;
+		if (!value.parsed(REAL))
+			try {
+				value.real = Double.parseDouble(value.source.trim());
+				value.parsed(REAL, true);
+			} catch (NumberFormatException e) {
+				value.parsed(REAL, false);
+			}
+		return value.valid(REAL) ? value.real : defaultValue;
+	}
+
+	/**
+	 * Gets the value of the key as a boolean, only <code>true</code> and
+	 * <code>false</code> ignoring the case are valid values, the value is only
+	 * parsed the first time it is requested after it changes
+	 * 
+	 * @param key          of the value
+	 * @param defaultValue returned if the map does not contain the key or the
+	 *                     value is not a boolean
+	 * 
+	 * @return the value as a boolean
+	 */
+	public boolean getBoolean(final String key, final boolean defaultValue) {
+		final Parsed value = this.parsed(key);
+		if (value == null)
+			return defaultValue;
+		if (!value.parsed(BOOLEAN)) {
+			final String string = value.source.trim();
+			value.bool = string.equalsIgnoreCase("true");
+			value.parsed(BOOLEAN, value.bool || string.equalsIgnoreCase("false"));
+		}
+		return value.valid(BOOLEAN) ? value.bool : defaultValue;
+	}
+
+	/**
+	 * Gets the value of the key as a duration, the value can be a number of
+	 * milliseconds, a number followed by one of the units <code>ns</code>,
+	 * <code>us</code>, <code>ms</code>, <code>s</code>, <code>m</code>,
+	 * <code>h</code> or <code>d</code> like <code>30s</code>, or an ISO-8601
+	 * duration like <code>PT30S</code>. The value is only parsed the first time
+	 * it is requested after it changes
+	 * 
+	 * @see Duration#parse(CharSequence)
+	 * 
+	 * @param key          of the value
+	 * @param defaultValue returned if the map does not contain the key or the
+	 *                     value is not a duration
+	 * 
+	 * @return the value as a duration
+	 */
+	public Duration getDuration(final String key, final Duration defaultValue) {
+		final Parsed value = this.parsed(key);
+		if (value == null)
+			return defaultValue;
+		if (!value.parsed(DURATION)) {
+			value.duration = duration(value.source.trim());
+			value.parsed(DURATION, value.duration != null);
+		}
+		return value.valid(DURATION) ? value.duration : defaultValue;
+	}
+
+	private static Duration duration(final String string) {
+		try {
+			if (string.startsWith("P") || string.startsWith("-P") || string.startsWith("p"))
+				return Duration.parse(string);
+			int digits = string.length();
+			while (digits > 0 && !Character.isDigit(string.charAt(digits - 1)))
+				digits--;
+			final long amount = Long.parseLong(string.substring(0, digits).trim());
+			switch (string.substring(digits).trim().toLowerCase()) {
+			case "ns":
+				return Duration.ofNanos(amount);
+			case "us":
+				return Duration.of(amount, ChronoUnit.MICROS);
+			case "":
+			case "ms":
+				return Duration.ofMillis(amount);
+			case "s":
+				return Duration.ofSeconds(amount);
+			case "m":
+				return Duration.ofMinutes(amount);
+			case "h":
+				return Duration.ofHours(amount);
+			case "d":
+				return Duration.ofDays(amount);
+			default:
+				return null;
+			}
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the value of the key as a list of the values separated by commas, with
+	 * the whitespaces around every value removed, the list can not be modified
+	 * and is only built the first time it is requested after the value changes
+	 * 
+	 * @param key of the value
+	 * 
+	 * @return the values or an empty list if the map does not contain the key
+	 */
+	public List<String> getList(final String key) {
+		return this.getList(key, Collections.<String>emptyList());
+	}
+
+	/**
+	 * Gets the value of the key as a list of the values separated by commas.
+	 * 
+	 * @see #getList(String)
+	 * 
+	 * @param key          of the value
+	 * @param defaultValue returned if the map does not contain the key
+	 * 
+	 * @return the values as a list
+	 */
+	public List<String> getList(final String key, final List<String> defaultValue) {
+		final Parsed value = this.parsed(key);
+		if (value == null)
+			return defaultValue;
+		if (!value.parsed(LIST)) {
+			final String string = value.source.trim();
+			if (string.isEmpty())
+				value.list = Collections.emptyList();
+			else {
+				final String[] items = string.split(",", -1);
+				for (int i = 0; i < items.length; i++)
+					items[i] = items[i].trim();
+				value.list = Collections.unmodifiableList(Arrays.asList(items));
+			}
+			value.parsed(LIST, true);
+		}
+		return value.list;
+	}
+
+	/**
+	 * Gets the keys of the map sorted, building them on the first call. The keys
+	 * of a concurrent map are added and removed holding its lock, so they always
+	 * match the map.
+	 */
+	private NavigableSet<String> sorted() {
+		this.ensureLoaded();
+		NavigableSet<String> keys = sorted;
+		if (lock == null) {
+			if (keys == null)
+				sorted = keys = new TreeSet<String>(values.keySet());
+			return keys;
+		}
+		if (keys == null) {
+			// No key can be added to the map while the keys are copied
+			lock.writeLock().lock();
+			try {
+				keys = sorted;
+				if (keys == null)
+					sorted = keys = new ConcurrentSkipListSet<String>(values.keySet());
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Gets the sorted keys that start with the prefix, without going through the
+	 * rest of the keys. Disk maps go through every key instead, keeping only the
+	 * ones that match
+	 */
+	private NavigableSet<String> range(final String prefix) {
+		if (disk != null) {
+			this.ensureLoaded();
+			final NavigableSet<String> keys = new TreeSet<String>();
+			for (String key : values.keySet())
+				if (key.startsWith(prefix))
+					keys.add(key);
+			return keys;
+		}
+		// The first string after every string starting with the prefix
+		int length = prefix.length();
+		while (length > 0 && prefix.charAt(length - 1) == Character.MAX_VALUE)
+			length--;
+		if (length == 0)
+			return this.sorted().tailSet(prefix, true);
+		final String end = prefix.substring(0, length - 1) + (char) (prefix.charAt(length - 1) + 1);
+		return this.sorted().subSet(prefix, true, end, false);
+	}
+
+	/**
+	 * Gets every key that starts with the prefix, like <code>server.db.</code>
+	 * for the keys <code>server.db.pool.size</code> and
+	 * <code>server.db.url</code>. The keys are kept sorted after the first call
+	 * so only the matching keys are visited, which is much faster than going
+	 * through the entry set on big maps.
+	 * 
+	 * <p>
+	 * Disk maps do not keep their keys on the heap, so every call reads all the
+	 * keys of the table and only the matching ones are kept.
+	 * 
+	 * @param prefix of the keys
+	 * 
+	 * @return a sorted copy of the keys, that can not be modified
+	 */
+	public SortedSet<String> keysWithPrefix(final String prefix) {
+		final NavigableSet<String> range = this.range(prefix);
+		// The keys of disk maps are already a copy
+		return Collections.unmodifiableSortedSet(disk != null ? range : new TreeSet<String>(range));
+	}
+
+	/**
+	 * Gets every entry whose key starts with the prefix.
+	 * 
+	 * @see #keysWithPrefix(String)
+	 * 
+	 * @param prefix of the keys
+	 * 
+	 * @return a copy of the entries sorted by key, that can not be modified
+	 */
+	public Map<String, String> subMap(final String prefix) {
+		final NavigableSet<String> range = this.range(prefix);
+		final Map<String, String> values = this.values;
+		final Map<String, String> map = new LinkedHashMap<String, String>();
+		for (String key : range) {
+			final String value = values.get(key);
+			// A key of a concurrent map may be removed while going through them
+			if (value != null || lock == null)
+				map.put(key, value);
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * Gets a view of the entries inside the namespace with the keys relative to
+	 * it, so for the namespace <code>server.db</code> the key
+	 * <code>server.db.pool.size</code> is seen as <code>pool.size</code>. The
+	 * view holds nothing, getting a value reads it from the map and going through
+	 * the entries only visits the keys of the namespace, so it always shows the
+	 * current values. The view can not be modified.
+	 * 
+	 * <p>
+	 * Going through the namespace of a disk map reads all the keys of the table,
+	 * like <code>keysWithPrefix()</code> does.
+	 * 
+	 * @param namespace of the keys, without the dot at the end
+	 * 
+	 * @return a view of the namespace
+	 */
+	public Map<String, String> getNamespace(final String namespace) {
+		return new Namespace(namespace + ".");
+	}
+
+	/**
+	 * View of the entries whose keys start with a prefix, without the prefix
+	 */
+	private final class Namespace extends AbstractMap<String, String> {
+
+		private final String prefix;
+
+		private Namespace(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public String get(Object key) {
+			MapFile.this.ensureLoaded();
+			return key instanceof String ? values.get(prefix + key) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			MapFile.this.ensureLoaded();
+			return key instanceof String && values.containsKey(prefix + key);
+		}
+
+		@Override
+		public int size() {
+			return MapFile.this.range(prefix).size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return MapFile.this.range(prefix).isEmpty();
+		}
+
+		@Override
+		public Set<Entry<String, String>> entrySet() {
+			return new AbstractSet<Entry<String, String>>() {
+
+				@Override
+				public Iterator<Entry<String, String>> iterator() {
+					final Iterator<String> keys = MapFile.this.keysWithPrefix(prefix).iterator();
+					return new Iterator<Entry<String, String>>() {
+
+						@Override
+						public boolean hasNext() {
+							return keys.hasNext();
+						}
+
+						@Override
+						public Entry<String, String> next() {
+							final String key = keys.next();
+							return new SimpleImmutableEntry<String, String>(key.substring(prefix.length()),
+									values.get(key));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return Namespace.this.size();
+				}
+			};
+		}
 	}
 
 	/**
@@ -97,6 +810,7 @@ public class MapFile extends BaseFile {
 	 * @return true if the map is not empty and contains that exact key
 	 */
 	public boolean containsKey(String key) {
+		this.ensureLoaded();
 		if (values.isEmpty()) return false;
 		return values.containsKey(key);
 	}
@@ -109,6 +823,7 @@ public class MapFile extends BaseFile {
 	 * @return true if the map is not empty and contains that exact value in any key
 	 */
 	public boolean containsValue(String value) {
+		this.ensureLoaded();
 		if (values.isEmpty()) return false;
 		return values.containsValue(value);
 	}
@@ -117,18 +832,183 @@ public class MapFile extends BaseFile {
 	 * Changes the data from one field of the map, if the map contains it, this will
 	 * override it, if it doesnt, it will just add it
 	 * 
+	 * <p>
+	 * A null data is written to the file as the text <code>null</code>, so that
+	 * text is what the field holds once the file is loaded again
+	 * 
 	 * @param field of the map that holds that information
 	 * @param data  inside the field of the map
+	 * 
+	 * @throws NullPointerException if the data is null and the map is concurrent
+	 *                              or on the disk
 	 */
 	public void put(final String field, final String data) {
-		values.put(field.trim(), data);
+		this.ensureLoaded();
+		if (data == null && (disk != null || lock != null))
+			throw new NullPointerException("Concurrent maps and maps on the disk can not hold null values");
+		final String key = field.trim();
+		if (lock == null) {
+			values.put(key, data);
+			this.changed(key);
+			if (journal != null)
+				journal.put(key, data);
+			this.markDirty();
+			return;
+		}
+		lock.readLock().lock();
+		try {
+			if (journal == null)
+				values.put(key, data);
+			else
+				// The changes of the same key are logged in the order they are done
+				values.compute(key, (k, v) -> {
+					journal.put(key, data);
+					return data;
+				});
+			this.changed(key);
+			modifications.increment();
+			this.markDirty();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Updates what depends on the keys after a value is put on the map
+	 */
+	private void changed(final String key) {
+		parsed.remove(key);
+		final NavigableSet<String> keys = sorted;
+		if (keys != null)
+			keys.add(key);
 	}
 
 	/**
+	 * The entries can be modified through the set, the file is considered
+	 * modified only when one of them is changed or removed. The set is a view of
+	 * the current entries, so after a reload it shows the new ones, but an
+	 * iteration keeps going through the entries it started with.
+	 * 
+	 * <p>
+	 * Changing the value of an entry is the same as <code>put()</code>. Removing
+	 * entries can not be logged, so the next save of a journaled map writes the
+	 * whole map.
+	 * 
 	 * @return retrieves the set of Strings as if it was from a map
 	 */
 	public Set<Entry<String, String>> getEntrySet() {
-		return values.entrySet();
+		this.ensureLoaded();
+		return new AbstractSet<Entry<String, String>>() {
+
+			@Override
+			public Iterator<Entry<String, String>> iterator() {
+				final Iterator<Entry<String, String>> it = values.entrySet().iterator();
+				return new Iterator<Entry<String, String>>() {
+
+					private String last;
+
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+
+					@Override
+					public Entry<String, String> next() {
+						final Entry<String, String> entry = it.next();
+						last = entry.getKey();
+						return new AbstractMap.SimpleEntry<String, String>(entry) {
+
+							private static final long serialVersionUID = 1L;
+
+							@Override
+							public String setValue(String value) {
+								final String old = super.setValue(value);
+								MapFile.this.put(this.getKey(), value);
+								return old;
+							}
+						};
+					}
+
+					@Override
+					public void remove() {
+						if (last == null)
+							throw new IllegalStateException();
+						if (lock == null) {
+							it.remove();
+							MapFile.this.removed(last);
+						} else
+							// The map iterated may have been replaced by a reload
+							MapFile.this.remove(last, null, false);
+						last = null;
+					}
+				};
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return values.entrySet().contains(o);
+			}
+
+			@Override
+			public boolean remove(Object o) {
+				if (!(o instanceof Entry))
+					return false;
+				final Entry<?, ?> entry = (Entry<?, ?>) o;
+				return MapFile.this.remove(entry.getKey(), entry.getValue(), true);
+			}
+
+			@Override
+			public void clear() {
+				MapFile.this.clear();
+			}
+
+			@Override
+			public int size() {
+				return values.size();
+			}
+		};
+	}
+
+	/**
+	 * Removes a key through the entry set, concurrent maps hold the lock so no
+	 * change is done to the map while the key is removed from what depends on it
+	 * 
+	 * @param key   to be removed
+	 * @param value the key must have or anything if not checked
+	 * @param check if the value must be checked
+	 * 
+	 * @return true if the key was removed
+	 */
+	private boolean remove(final Object key, final Object value, final boolean check) {
+		if (lock != null)
+			lock.writeLock().lock();
+		try {
+			if (!values.containsKey(key) || check && !Objects.equals(values.get(key), value))
+				return false;
+			values.remove(key);
+			this.removed((String) key);
+			return true;
+		} finally {
+			if (lock != null)
+				lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Updates what depends on the keys after a key is removed through the entry
+	 * set, the removal is not logged so the whole file has to be written again
+	 * 
+	 * @param key that was removed
+	 */
+	private void removed(final String key) {
+		rewrite = true;
+		parsed.remove(key);
+		final NavigableSet<String> keys = sorted;
+		if (keys != null)
+			keys.remove(key);
+		if (modifications != null)
+			modifications.increment();
+		this.markDirty();
 	}
 
 	/**
@@ -137,25 +1017,174 @@ public class MapFile extends BaseFile {
 	 */
 	@Override
 	public void clear() {
-		values.clear();
+		this.markLoaded();
+		if (lock != null)
+			lock.writeLock().lock();
+		try {
+			values.clear();
+			parsed.clear();
+			sorted = null;
+			if (journal != null)
+				journal.clear();
+			if (modifications != null)
+				modifications.increment();
+			this.markDirty();
+		} finally {
+			if (lock != null)
+				lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Checks if every change is logged on a sidecar file instead of writing the
+	 * whole file when saving
+	 * 
+	 * @see Option#JOURNALED
+	 * 
+	 * @return true if the file was created as journaled
+	 */
+	public boolean isJournaled() {
+		return journal != null;
+	}
+
+	/**
+	 * Changes how big the log of a journaled file can grow compared to the file
+	 * before it is merged into the file, a lower ratio keeps the log smaller but
+	 * writes the whole file more often
+	 * 
+	 * @param ratio between the size of the log and the size of the file, 1 by
+	 *              default
+	 */
+	public void setCompactionRatio(final double ratio) {
+		this.compactionRatio = ratio;
+	}
+
+	@Override
+	void saved() {
+		super.saved();
+		// The changes done to a concurrent map after it was copied are not saved
+		if (modifications != null && modifications.sum() != saving)
+			this.markDirty();
+	}
+
+	@Override
+	void reloaded() {
+		// The changes done to a concurrent map after it was replaced are not on the
+		// file
+		if (modifications != null && modifications.sum() != saving)
+			this.markDirty();
 	}
 
 	@Override
 	protected final void buffersave() throws IOException {
-		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-		for (Entry<String, String> e : values.entrySet()) {
-			writer.write(e.getKey() + " = " + e.getValue() + "\n");
-		}
-		writer.close();
+		this.write(true);
 	}
 
 	@Override
 	protected final void writersave() throws IOException {
-		FileWriter writer = new FileWriter(file);
-		for (Entry<String, String> e : values.entrySet()) {
-			writer.write(e.getKey() + " = " + e.getValue() + "\n");
+		this.write(false);
+	}
+
+	private void write(final boolean buffered) throws IOException {
+		final File target = this.saveTarget();
+		// An atomic save replaces the file so it must hold the whole map
+		final boolean whole = journal == null || target != file;
+		Map<String, String> values = this.values;
+		byte[] changes = null;
+		if (lock != null)
+			lock.writeLock().lock();
+		try {
+			if (journal != null) {
+				if (rewrite) {
+					journal.rebase(values);
+					rewrite = false;
+				}
+				changes = journal.drain();
+			}
+			if (lock != null) {
+				// Concurrent maps are copied so they can be changed while being written
+				if (whole)
+					values = new HashMap<String, String>(values);
+				saving = modifications.sum();
+			}
+		} finally {
+			if (lock != null)
+				lock.writeLock().unlock();
+		}
+		try {
+			if (whole)
+				this.write(target, values, buffered);
+			if (journal == null)
+				return;
+			// Only the changes are written to the log, the file is not written unless
+			// it is replaced
+			this.wrote((whole ? target.length() : 0) + journal.append(changes));
+		} catch (IOException e) {
+			// The map is no longer known to match the file and the log
+			if (journal != null)
+				rewrite = true;
+			throw e;
+		}
+		final long length = journal.length();
+		if (length > COMPACTION_MINIMUM && length > file.length() * compactionRatio)
+			this.compact();
+	}
+
+	/**
+	 * Writes a copy of the map to the file in the background and removes from the
+	 * log the changes it holds
+	 */
+	private void compact() {
+		if (!journal.startCompaction())
+			return;
+		final Map<String, String> copy;
+		final long covered;
+		if (lock != null)
+			lock.writeLock().lock();
+		try {
+			copy = new HashMap<String, String>(values);
+			covered = journal.length();
+		} finally {
+			if (lock != null)
+				lock.writeLock().unlock();
+		}
+		try {
+			FileManager.executor().execute(() -> {
+				File temporal = null;
+				try {
+					temporal = AtomicSave.temporal(file);
+					this.write(temporal, copy, true);
+					AtomicSave.force(temporal);
+					synchronized (journal) {
+						AtomicSave.replace(temporal, file);
+						temporal = null;
+						AtomicSave.syncDirectory(file.getAbsoluteFile().getParentFile());
+						journal.trim(covered);
+					}
+				} catch (IOException e) {
+					FileManager.error(FileErrorMessage.SAVING, journal.file().getName(), e);
+					if (temporal != null)
+						temporal.delete();
+				} finally {
+					journal.endCompaction();
+				}
+			});
+		} catch (RuntimeException e) {
+			// The executor rejected it, the next save will try again
+			journal.endCompaction();
+		}
+	}
+
+	private void write(final File target, final Map<String, String> values, final boolean buffered)
+			throws IOException {
+		try (Writer writer = buffered ? new BufferedWriter(new FileWriter(target)) : new FileWriter(target)) {
+			for (Entry<String, String> e : values.entrySet())
+				writer.write(e.getKey() + " = " + e.getValue() + "\n");
 		}
-		writer.close();
+		// A temporal file keeps its attributes when it is renamed over the file
+		this.snapshot(target, values);
+		if (disk != null)
+			disk.saved(target);
 	}
 
 }
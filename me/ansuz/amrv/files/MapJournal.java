@@ -0,0 +1,267 @@
+package me.ansuz.amrv.files;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Log of the changes done to a map file since it was last written, kept on a
+ * sidecar file next to it, so saving a map only appends the changes instead of
+ * writing every entry again.
+ *
+ * <p>
+ * The changes of every save are appended as a single frame, an int with the
+ * length of the changes, an int with their CRC32 and the changes, so a frame
+ * that was not completely written when the program crashed is ignored. Every
+ * change is a byte with its type followed by the UTF-8 key and value, each one
+ * prefixed by its length.
+ *
+ * <p>
+ * Replaying the whole log over a map file written at any moment after the
+ * first change of the log gives the same map, as every change to the map is on
+ * the log in order, so the map file can be rewritten at any moment before the
+ * log is trimmed.
+ *
+ * @author Ansuz
+ *
+ */
+final class MapJournal {
+
+	private static final byte PUT = 1;
+	private static final byte CLEAR = 2;
+	private static final int HEADER = 8;
+
+	private final File file;
+	// Changes that were not appended yet, locked while being modified as
+	// concurrent map files log changes from many threads
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private final DataOutputStream out = new DataOutputStream(pending);
+	// Bytes of the log that hold valid frames
+	private long length;
+	private final AtomicBoolean compacting = new AtomicBoolean();
+
+	/**
+	 * @param main file the log belongs to
+	 */
+	MapJournal(File main) {
+		this.file = new File(main.getAbsoluteFile().getParentFile(), main.getName() + ".journal");
+	}
+
+	/**
+	 * @return the sidecar file of the log
+	 */
+	File file() {
+		return file;
+	}
+
+	/**
+	 * @return the bytes of the log that are on the disk
+	 */
+	synchronized long length() {
+		return length;
+	}
+
+	/**
+	 * @return true if there are changes that were not appended yet
+	 */
+	boolean hasPending() {
+		return pending.size() > 0;
+	}
+
+	/**
+	 * Adds the change of a value to the next frame
+	 */
+	void put(String key, String value) {
+		synchronized (pending) {
+			try {
+				out.writeByte(PUT);
+				this.write(key);
+				// Logged the same way the map file writes it, so it is read back the same
+				this.write(String.valueOf(value));
+			} catch (IOException e) {
+				// Writing to memory does not fail
+			}
+		}
+	}
+
+	/**
+	 * Adds the removal of every value to the next frame
+	 */
+	void clear() {
+		synchronized (pending) {
+			pending.reset();
+			try {
+				out.writeByte(CLEAR);
+			} catch (IOException e) {
+				// Writing to memory does not fail
+			}
+		}
+	}
+
+	/**
+	 * Replaces the next frame with the whole map, used when the map was changed
+	 * without being logged
+	 *
+	 * @param values that the map holds now
+	 */
+	void rebase(Map<String, String> values) {
+		synchronized (pending) {
+			this.clear();
+			for (Entry<String, String> entry : values.entrySet())
+				this.put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Drops the changes that were not appended yet
+	 */
+	void discard() {
+		synchronized (pending) {
+			pending.reset();
+		}
+	}
+
+	/**
+	 * Takes the changes that were not appended yet, so new changes go to the
+	 * next frame while these are being appended
+	 *
+	 * @return the changes of the next frame
+	 */
+	byte[] drain() {
+		synchronized (pending) {
+			final byte[] changes = pending.toByteArray();
+			pending.reset();
+			return changes;
+		}
+	}
+
+	private void write(String string) throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Applies every complete frame of the log to the map, the frames after a
+	 * broken one are ignored and will be overwritten by the next append.
+	 *
+	 * @param values to apply the changes to
+	 *
+	 * @return the bytes read from the log
+	 *
+	 * @throws IOException if the log exists but cant be read
+	 */
+	synchronized long replay(Map<String, String> values) throws IOException {
+		length = 0;
+		if (!file.exists())
+			return 0;
+		final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		final CRC32 crc = new CRC32();
+		while (buffer.remaining() >= HEADER) {
+			final int size = buffer.getInt();
+			final int hash = buffer.getInt();
+			if (size < 0 || size > buffer.remaining())
+				break;
+			crc.reset();
+			crc.update(buffer.array(), buffer.position(), size);
+			if ((int) crc.getValue() != hash)
+				break;
+			final ByteBuffer frame = buffer.slice();
+			frame.limit(size);
+			while (frame.hasRemaining()) {
+				if (frame.get() == CLEAR)
+					values.clear();
+				else
+					values.put(read(frame), read(frame));
+			}
+			buffer.position(buffer.position() + size);
+			length = buffer.position();
+		}
+		return buffer.capacity();
+	}
+
+	private static String read(ByteBuffer frame) {
+		final byte[] bytes = new byte[frame.getInt()];
+		frame.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Appends the changes taken from <code>drain()</code> as a new frame and
+	 * forces it to the disk
+	 *
+	 * @param changes of the frame
+	 *
+	 * @return the bytes appended to the log
+	 *
+	 * @throws IOException if the log cant be written, the changes are lost so the
+	 *                     whole map must be logged again with
+	 *                     <code>rebase()</code>
+	 */
+	synchronized long append(byte[] changes) throws IOException {
+		if (changes.length == 0)
+			return 0;
+		final CRC32 crc = new CRC32();
+		crc.update(changes, 0, changes.length);
+		final ByteBuffer frame = ByteBuffer.allocate(HEADER + changes.length);
+		frame.putInt(changes.length).putInt((int) crc.getValue()).put(changes).flip();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE)) {
+			// Anything after the valid frames is a broken frame from a crash
+			channel.truncate(length);
+			channel.position(length);
+			while (frame.hasRemaining())
+				channel.write(frame);
+			channel.force(false);
+		}
+		length += HEADER + changes.length;
+		return HEADER + changes.length;
+	}
+
+	/**
+	 * Removes from the log the frames that are already on the map file
+	 *
+	 * @param covered bytes of the log that the map file holds
+	 *
+	 * @throws IOException if the log cant be rewritten
+	 */
+	synchronized void trim(long covered) throws IOException {
+		final File temporal = AtomicSave.temporal(file);
+		try {
+			try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+					FileChannel target = FileChannel.open(temporal.toPath(), StandardOpenOption.WRITE)) {
+				long position = covered;
+				while (position < length)
+					position += source.transferTo(position, length - position, target);
+				target.force(false);
+			}
+			AtomicSave.replace(temporal, file);
+		} catch (IOException e) {
+			temporal.delete();
+			throw e;
+		}
+		length -= covered;
+	}
+
+	/**
+	 * @return true if no compaction was running and now this one is
+	 */
+	boolean startCompaction() {
+		return compacting.compareAndSet(false, true);
+	}
+
+	void endCompaction() {
+		compacting.set(false);
+	}
+
+}
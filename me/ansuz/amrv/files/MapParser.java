@@ -0,0 +1,198 @@
+package me.ansuz.amrv.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Parses the text of a map file straight from its bytes, without building a
+ * string for every line, big files are split on line breaks into chunks that
+ * are parsed at the same time on the common fork join pool.
+ *
+ * <p>
+ * Every chunk is parsed into its own map and the maps are merged in the order
+ * of the chunks, so when a key is repeated the last one on the file wins, just
+ * like parsing the file line by line.
+ *
+ * <p>
+ * Lines are split by <code>\n</code> or <code>\r</code> like
+ * <code>BufferedReader.readLine()</code>, so it only works with charsets where
+ * those characters, the <code>=</code> and the whitespaces are single bytes that
+ * can not be part of other characters, which are UTF-8 and the charsets with a
+ * byte for every character that are compatible with ASCII.
+ *
+ * @author Ansuz
+ *
+ */
+final class MapParser {
+
+	/**
+	 * Files smaller than this are better read with a reader, mapping a file
+	 * costs more than what parsing its bytes saves until it is this big
+	 */
+	static final long MINIMUM_LENGTH = 1L << 20;
+	// Files smaller than this are parsed on a single thread
+	private static final long PARALLEL_THRESHOLD = 1L << 20;
+	// Chunks are never smaller than this
+	private static final long MINIMUM_CHUNK = 1L << 20;
+	// Bytes copied from the mapping at a time
+	private static final int BLOCK = 1 << 16;
+	private static final String ASCII = "=#/ \t\n\r";
+
+	private final MappedRegions regions;
+	private final Charset charset;
+
+	private MapParser(MappedRegions regions, Charset charset) {
+		this.regions = regions;
+		this.charset = charset;
+	}
+
+	/**
+	 * Checks if the parser can split lines and entries of files encoded with the
+	 * given charset
+	 *
+	 * @param charset of the files
+	 *
+	 * @return true if the charset is supported
+	 */
+	static boolean supports(Charset charset) {
+		if (!charset.equals(StandardCharsets.UTF_8) && (!charset.canEncode()
+				|| charset.newEncoder().maxBytesPerChar() != 1))
+			return false;
+		return new String(ASCII.getBytes(StandardCharsets.US_ASCII), charset).equals(ASCII);
+	}
+
+	/**
+	 * Parses every entry of the file into the given map
+	 *
+	 * @param file     to be parsed
+	 * @param charset  of the file, must be supported
+	 * @param values   to put the entries into
+	 * @param parallel if the file can be parsed by multiple threads, otherwise the
+	 *                 entries are put into the map as they are parsed
+	 *
+	 * @throws IOException if the file cant be mapped
+	 */
+	static void parse(File file, Charset charset, Map<String, String> values, boolean parallel)
+			throws IOException {
+		final MappedRegions regions;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			regions = new MappedRegions(channel);
+		}
+		// The file may be saved right after, which some systems refuse while it
+		// is mapped
+		try {
+			parse(regions, charset, values, parallel);
+		} finally {
+			regions.release();
+		}
+	}
+
+	private static void parse(MappedRegions regions, Charset charset, Map<String, String> values,
+			boolean parallel) {
+		final MapParser parser = new MapParser(regions, charset);
+		final long length = regions.length();
+		if (!parallel || length < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			parser.parse(0, length, values);
+			return;
+		}
+
+		final long size = Math.max(MINIMUM_CHUNK, length / (ForkJoinPool.getCommonPoolParallelism() * 4));
+		final List<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		for (long bound = size; bound < length; bound += size) {
+			// Every chunk but the first one starts right after a line break
+			while (bound < length && !isBreak(regions.get(bound - 1)))
+				bound++;
+			if (bound < length && bound > bounds.get(bounds.size() - 1))
+				bounds.add(bound);
+		}
+		bounds.add(length);
+
+		final List<Map<String, String>> chunks = IntStream.range(0, bounds.size() - 1).parallel()
+				.mapToObj(i -> {
+					final Map<String, String> chunk = new HashMap<String, String>();
+					parser.parse(bounds.get(i), bounds.get(i + 1), chunk);
+					return chunk;
+				}).collect(Collectors.toList());
+		for (Map<String, String> chunk : chunks)
+			values.putAll(chunk);
+	}
+
+	private static boolean isBreak(byte b) {
+		return b == '\n' || b == '\r';
+	}
+
+	private static boolean isSpace(byte b) {
+		// The same characters removed by String.trim(), bytes of characters
+		// encoded with multiple bytes are never below 0x80
+		return b >= 0 && b <= ' ';
+	}
+
+	/**
+	 * Parses the lines inside the range, which must start at the beginning of a
+	 * line
+	 */
+	private void parse(long from, final long to, final Map<String, String> values) {
+		byte[] buffer = new byte[BLOCK];
+		// Bytes of the buffer that belong to a line not parsed yet
+		int held = 0;
+		long position = from;
+		while (position < to) {
+			if (held == buffer.length)
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			final int count = (int) Math.min(buffer.length - held, to - position);
+			regions.get(position, buffer, held, count);
+			position += count;
+			final int limit = held + count;
+			int start = 0;
+			for (int i = held; i < limit; i++)
+				if (isBreak(buffer[i])) {
+					this.line(buffer, start, i, values);
+					start = i + 1;
+				}
+			held = limit - start;
+			System.arraycopy(buffer, start, buffer, 0, held);
+		}
+		this.line(buffer, 0, held, values);
+	}
+
+	/**
+	 * Parses a single line, ignoring comments and lines without an entry
+	 */
+	private void line(final byte[] line, int start, int end, final Map<String, String> values) {
+		while (start < end && isSpace(line[start]))
+			start++;
+		if (start == end || line[start] == '#' || (line[start] == '/' && start + 1 < end && line[start + 1] == '/'))
+			return;
+		int separator = start;
+		while (separator < end && line[separator] != '=')
+			separator++;
+		if (separator == end)
+			return;
+		values.put(this.string(line, start, separator), this.string(line, separator + 1, end));
+	}
+
+	/**
+	 * Decodes the range without the whitespaces around it
+	 */
+	private String string(final byte[] line, int start, int end) {
+		while (start < end && isSpace(line[start]))
+			start++;
+		while (end > start && isSpace(line[end - 1]))
+			end--;
+		return new String(line, start, end - start, charset);
+	}
+
+}
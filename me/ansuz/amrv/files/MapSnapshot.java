@@ -0,0 +1,148 @@
+package me.ansuz.amrv.files;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary copy of the entries of a map file kept on a sidecar file next to it,
+ * so loading the map does not need to parse the text.
+ *
+ * <p>
+ * The snapshot starts with a magic number, the modification time, size and
+ * identity of the file it was written from and the amount of entries, followed
+ * by every key and value as UTF-8 prefixed by their length. It is only used if
+ * the file still has those same attributes, otherwise the file changed and
+ * must be parsed.
+ *
+ * @author Ansuz
+ *
+ */
+final class MapSnapshot {
+
+	private static final int MAGIC = 0x4D415053;
+
+	private MapSnapshot() {
+	}
+
+	/**
+	 * @param main file the snapshot belongs to
+	 *
+	 * @return the sidecar file of the snapshot
+	 */
+	static File of(File main) {
+		return new File(main.getAbsoluteFile().getParentFile(), main.getName() + ".snapshot");
+	}
+
+	/**
+	 * Writes the entries as a snapshot of the source file, the snapshot is
+	 * replaced atomically so it is never read half written
+	 *
+	 * @param snapshot file to be written
+	 * @param source   file that holds the same entries, already written
+	 * @param values   entries of the source file
+	 *
+	 * @throws IOException if the snapshot cant be written
+	 */
+	static void write(File snapshot, File source, Map<String, String> values) throws IOException {
+		final BasicFileAttributes attributes = Files.readAttributes(source.toPath(), BasicFileAttributes.class);
+		final File temporal = AtomicSave.temporal(snapshot);
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temporal), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeLong(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+				out.writeLong(attributes.size());
+				write(out, String.valueOf(attributes.fileKey()));
+				out.writeInt(values.size());
+				for (Entry<String, String> entry : values.entrySet()) {
+					write(out, entry.getKey());
+					// Written the same way the source file holds it, so it is read back the same
+					write(out, String.valueOf(entry.getValue()));
+				}
+			}
+			AtomicSave.replace(temporal, snapshot);
+		} catch (IOException e) {
+			temporal.delete();
+			throw e;
+		}
+	}
+
+	private static void write(DataOutputStream out, String string) throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads the entries from the snapshot if it was written from the source file
+	 * as it is now
+	 *
+	 * @param snapshot file to be read
+	 * @param source   file the snapshot should belong to
+	 * @param values   to put the entries into, only modified if the snapshot is
+	 *                 valid
+	 *
+	 * @return true if the snapshot was valid and the entries were read
+	 */
+	static boolean read(File snapshot, File source, Map<String, String> values) {
+		if (!snapshot.isFile())
+			return false;
+		try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+			final BasicFileAttributes attributes = Files.readAttributes(source.toPath(),
+					BasicFileAttributes.class);
+			final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC
+					|| buffer.getLong() != attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+					|| buffer.getLong() != attributes.size()
+					|| !read(buffer, new byte[64]).equals(String.valueOf(attributes.fileKey())))
+				return false;
+			final int count = buffer.getInt();
+			// Every entry takes at least the two lengths
+			if (count < 0 || count > buffer.remaining() / 8)
+				return false;
+			byte[] bytes = new byte[256];
+			final String[] entries = new String[count * 2];
+			for (int i = 0; i < entries.length; i++) {
+				final int length = buffer.getInt(buffer.position());
+				if (length > bytes.length)
+					bytes = new byte[Math.max(length, bytes.length * 2)];
+				entries[i] = read(buffer, bytes);
+			}
+			for (int i = 0; i < entries.length; i += 2)
+				values.put(entries[i], entries[i + 1]);
+			return true;
+		} catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+			// The snapshot is broken, the file will be parsed
+			return false;
+		}
+	}
+
+	/**
+	 * Reads a string prefixed by its length using the given array as a buffer if
+	 * it is big enough
+	 */
+	private static String read(MappedByteBuffer buffer, byte[] bytes) {
+		final int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining())
+			throw new BufferUnderflowException();
+		if (length > bytes.length)
+			bytes = new byte[length];
+		buffer.get(bytes, 0, length);
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+}
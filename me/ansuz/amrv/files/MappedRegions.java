@@ -0,0 +1,150 @@
+package me.ansuz.amrv.files;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.function.Consumer;
+
+/**
+ * A read only view of a whole file mapped into memory, as a single mapping
+ * can not be bigger than <code>Integer.MAX_VALUE</code> the file is mapped in
+ * multiple regions so files of any size can be read.
+ *
+ * <p>
+ * The contents are never copied to the heap, reading a byte only touches the
+ * pages that hold it, and every method can be called from multiple threads at
+ * the same time.
+ * 
+ * @author Ansuz
+ *
+ */
+final class MappedRegions {
+
+	private static final int REGION_BITS = 30;
+	private static final long REGION_SIZE = 1L << REGION_BITS;
+	private static final long REGION_MASK = REGION_SIZE - 1;
+	// Releases a mapping or null if the running version does not allow it
+	private static final Consumer<ByteBuffer> UNMAPPER = unmapper();
+
+	private final MappedByteBuffer[] regions;
+	private final long length;
+
+	/**
+	 * Maps the whole channel into memory, the channel can be closed after this
+	 * as the mappings will remain valid
+	 * 
+	 * @param channel to be mapped
+	 * 
+	 * @throws IOException if the file cant be mapped
+	 */
+	MappedRegions(FileChannel channel) throws IOException {
+		this.length = channel.size();
+		this.regions = new MappedByteBuffer[(int) ((length + REGION_MASK) >>> REGION_BITS)];
+		for (int i = 0; i < regions.length; i++) {
+			final long start = (long) i << REGION_BITS;
+			regions[i] = channel.map(MapMode.READ_ONLY, start, Math.min(REGION_SIZE, length - start));
+		}
+	}
+
+	/**
+	 * @return the amount of bytes mapped
+	 */
+	long length() {
+		return length;
+	}
+
+	/**
+	 * Reads a single byte from the file
+	 * 
+	 * @param position of the byte in the file
+	 * 
+	 * @return the byte at that position
+	 */
+	byte get(final long position) {
+		return regions[(int) (position >>> REGION_BITS)].get((int) (position & REGION_MASK));
+	}
+
+	/**
+	 * Copies a range of the file into the given array
+	 * 
+	 * @param position of the first byte to be copied
+	 * @param dst      array to copy the bytes to
+	 * @param offset   in the array of the first byte
+	 * @param count    of bytes to copy
+	 */
+	void get(long position, final byte[] dst, int offset, int count) {
+		while (count > 0) {
+			final ByteBuffer region = regions[(int) (position >>> REGION_BITS)].duplicate();
+			final int start = (int) (position & REGION_MASK);
+			final int n = Math.min(count, region.limit() - start);
+			region.position(start);
+			region.get(dst, offset, n);
+			position += n;
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Releases every region right away instead of when they are collected, the
+	 * regions must not be read after this
+	 */
+	void release() {
+		for (MappedByteBuffer region : regions)
+			unmap(region);
+	}
+
+	/**
+	 * Releases a mapping right away instead of when it is collected. Some systems
+	 * like Windows can not truncate, replace or delete a file while any part of
+	 * it is mapped.
+	 *
+	 * <p>
+	 * The buffer and every view of it must never be used again, reading a
+	 * released mapping crashes the virtual machine.
+	 *
+	 * @param buffer mapping to be released, can be null
+	 */
+	static void unmap(final MappedByteBuffer buffer) {
+		if (buffer != null && UNMAPPER != null)
+			try {
+				UNMAPPER.accept(buffer);
+			} catch (RuntimeException e) {
+				// The mapping is released once it is collected
+			}
+	}
+
+	private static Consumer<ByteBuffer> unmapper() {
+		try {
+			// Java 9 and later
+			final Class<?> type = Class.forName("sun.misc.Unsafe");
+			final Method invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+			final Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			final Object unsafe = field.get(null);
+			return buffer -> invoke(invokeCleaner, unsafe, buffer);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Not available, it may be Java 8
+		}
+		try {
+			final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> invoke(clean, invoke(cleaner, buffer));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static Object invoke(final Method method, final Object target, final Object... arguments) {
+		try {
+			return method.invoke(target, arguments);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -1,11 +1,21 @@
 package me.ansuz.amrv.files;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+import me.ansuz.amrv.files.FileManager.FileErrorMessage;
+import me.ansuz.amrv.files.FileManager.FileOperationMessage;
 
 /**
  * A file handler provided by the FileManager, this class adds the option for an
@@ -18,7 +28,20 @@ import java.io.IOException;
  */
 public class PlainFile extends BaseFile {
 
-	private String data = "";
+	// Files bigger than this are mapped into memory instead of being copied into a
+	// heap buffer before decoding them
+	private static final long MAPPING_THRESHOLD = 1L << 22;
+	// Size of the chunks that are copied from the data to the writer when saving
+	private static final int WRITE_CHUNK = 8192;
+
+	private final StringBuilder data;
+	// Last string built from the data, dropped whenever the data changes
+	private String snapshot;
+	private volatile Charset charset;
+	// Lock of the data or null if the file is not shared between threads
+	private final FileLock lock;
+	// Version of the data being saved or reloaded
+	private long saving;
 
 	/**
 	 * Creator for the plain file, use
@@ -32,48 +55,241 @@ public class PlainFile extends BaseFile {
 	 * @param file
 	 */
 	protected PlainFile(File file) {
-		super(file);
-		this.reloadProcess();
+		this(file, Charset.defaultCharset());
+	}
+
+	/**
+	 * Creator for the plain file using the given charset to read and write the
+	 * file, use
+	 * 
+	 * <pre>
+	 * FileManager.construct(file).toPlainFile(charset)
+	 * </pre>
+	 * 
+	 * instead
+	 * 
+	 * @param file
+	 * @param charset used to decode and encode the contents of the file
+	 */
+	protected PlainFile(File file, Charset charset) {
+		this(file, charset, false);
+	}
+
+	/**
+	 * Creator for the plain file that can delay reading the file until its data
+	 * is used, use
+	 * 
+	 * <pre>
+	 * FileManager.construct(file).lazy().toPlainFile(charset)
+	 * </pre>
+	 * 
+	 * instead
+	 * 
+	 * @param file
+	 * @param charset used to decode and encode the contents of the file
+	 * @param lazy    if the file should not be read until its data is used
+	 */
+	protected PlainFile(File file, Charset charset, boolean lazy) {
+		this(file, charset, lazy, false);
+	}
+
+	/**
+	 * Creator for the plain file that can be shared between threads, use
+	 * 
+	 * <pre>
+	 * FileManager.construct(file).toPlainFile(charset, true)
+	 * </pre>
+	 * 
+	 * instead.
+	 * 
+	 * <p>
+	 * Reading a concurrent file never blocks unless the data is being changed at
+	 * that moment, changes and reloads are exclusive and saves only block the
+	 * changes. The changes done while a save is writing the file wait for it, so
+	 * the file is always written with the data of a single moment. Saves, reloads
+	 * and deletes must still happen one after another, like the asynchronous ones
+	 * do.
+	 * 
+	 * @param file
+	 * @param charset    used to decode and encode the contents of the file
+	 * @param lazy       if the file should not be read until its data is used
+	 * @param concurrent if the file can be used by many threads at the same time
+	 */
+	protected PlainFile(File file, Charset charset, boolean lazy, boolean concurrent) {
+		super(file, false);
+		this.charset = charset;
+		this.data = new StringBuilder();
+		this.lock = concurrent ? new FileLock() : null;
+		if (!lazy)
+			this.reload();
+	}
+
+	/**
+	 * Runs a change of the data, holding the lock if the file is concurrent
+	 */
+	private void change(final Runnable change) {
+		if (lock == null)
+			change.run();
+		else
+			lock.write(change);
 	}
 
 	@Override
 	protected boolean reloadProcess() {
 		if (!file.canRead()) {
-			System.err.println("Cant read file " + file.getName() + " access blocked");
+			FileManager.warn(FileOperationMessage.CANT_READ, file.getName());
 			return false;
 		}
-		try {
-			BufferedReader reader = new BufferedReader(new FileReader(file));
-			while (reader.ready()) {
-				data = data + reader.readLine();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				FileManager.error(FileErrorMessage.READING, file.getName());
+				return false;
+			}
+			final ByteBuffer buffer;
+			if (size >= MAPPING_THRESHOLD)
+				buffer = channel.map(MapMode.READ_ONLY, 0, size);
+			else {
+				buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining())
+					if (channel.read(buffer) < 0)
+						break;
+				buffer.flip();
 			}
-			reader.close();
+			final CharBuffer chars = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE).decode(buffer);
+			// The file is decoded before taking the lock so readers only wait for the copy
+			this.change(() -> {
+				// A change done after the watcher checked the file is not replaced
+				if (lock != null && this.keep(lock.version() - 1 != saving))
+					return;
+				data.setLength(0);
+				data.ensureCapacity(chars.remaining());
+				data.append(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+				snapshot = null;
+				// Taken holding the lock, so the changes done after this are not lost
+				// when the file is marked as not modified
+				if (lock != null)
+					saving = lock.version();
+			});
 			return true;
 		} catch (IOException e) {
-			e.printStackTrace();
-			return true;
+			FileManager.error(FileErrorMessage.READING, file.getName(), e);
+			return false;
 		}
 	}
 
+	/**
+	 * Gets the charset used to decode the file when it is loaded and to encode it
+	 * when it is saved
+	 * 
+	 * @return the charset of the file
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Changes the charset used to encode the file on the next save, if you want to
+	 * read the file again with this charset call <code>reload()</code> after this
+	 * 
+	 * @param charset to be used for the file
+	 */
+	public void setCharset(final Charset charset) {
+		this.ensureLoaded();
+		this.change(() -> {
+			this.charset = charset;
+			this.markDirty();
+		});
+	}
+
 	/**
 	 * Gets the holded data from the file, if the file has been changed manually or
 	 * using other methods, this will not take again, this will recover the data
 	 * from the instance that was already obtained using the <code>reload()</code>
 	 * method
 	 * 
+	 * <p>
+	 * The string is only built again if the data changed since the last call
+	 * 
 	 * @return a string containing the whole file, not recomended for large files
 	 */
 	public String getData() {
+		this.ensureLoaded();
+		if (lock == null)
+			return this.string();
+		final String cached = lock.read(() -> snapshot);
+		if (cached != null)
+			return cached;
+		// Other readers may be building the same string at the same time
+		final long stamp = lock.share();
+		try {
+			return this.string();
+		} finally {
+			lock.unshare(stamp);
+		}
+	}
+
+	private String string() {
+		if (snapshot == null)
+			snapshot = data.toString();
+		return snapshot;
+	}
+
+	/**
+	 * Gets the holded data from the file without building a string from it, this
+	 * is a live view of the data so it will change whenever the file does and
+	 * must not be modified
+	 * 
+	 * <p>
+	 * Concurrent files return the same string as <code>getData()</code> as the
+	 * data can not be read safely while other threads change it
+	 * 
+	 * @return the data of the file as a sequence of characters
+	 */
+	public CharSequence getSequence() {
+		if (lock != null)
+			return this.getData();
+		this.ensureLoaded();
 		return data;
 	}
 
+	/**
+	 * Gets the amount of characters holded by the file
+	 * 
+	 * @return the length of the data
+	 */
+	public int length() {
+		this.ensureLoaded();
+		if (lock == null)
+			return data.length();
+		return lock.readInt(data::length);
+	}
+
+	/**
+	 * Checks if the file can be used by many threads at the same time
+	 * 
+	 * @see #PlainFile(File, Charset, boolean, boolean)
+	 * 
+	 * @return true if the file was created as concurrent
+	 */
+	public boolean isConcurrent() {
+		return lock != null;
+	}
+
 	/**
 	 * Overrides the whole data from the file using the given string
 	 * 
 	 * @param data - information to be set as the data
 	 */
 	public void setData(final String data) {
-		this.data = data;
+		this.markLoaded();
+		this.change(() -> {
+			this.data.setLength(0);
+			this.data.append(data);
+			this.snapshot = data;
+			this.markDirty();
+		});
 	}
 
 	/**
@@ -82,7 +298,12 @@ public class PlainFile extends BaseFile {
 	 * @param character to add to the file
 	 */
 	public void addData(final char character) {
-		this.addData(character + "");
+		this.ensureLoaded();
+		this.change(() -> {
+			data.append(character);
+			snapshot = null;
+			this.markDirty();
+		});
 	}
 	
 	/**
@@ -91,21 +312,35 @@ public class PlainFile extends BaseFile {
 	 * @param characters to append to the file
 	 */
 	public void addData(final char[] characters) {
-		this.addData(characters.toString());
+		this.ensureLoaded();
+		this.change(() -> {
+			data.append(characters);
+			snapshot = null;
+			this.markDirty();
+		});
 	}
+
 	/**
 	 * Adds the given data to the data already on the file
 	 * 
 	 * @param data - a string containing the data to be added
 	 */
 	public void addData(final String data) {
-		if (data.length() < 65536)
-			this.data = this.data + data;
-		else {
-			StringBuilder b = new StringBuilder(this.data);
-			b.append(data);
-			this.data = b.toString();
-		}
+		this.addData((CharSequence) data);
+	}
+
+	/**
+	 * Adds the given data to the data already on the file
+	 * 
+	 * @param data - a sequence containing the data to be added
+	 */
+	public void addData(final CharSequence data) {
+		this.ensureLoaded();
+		this.change(() -> {
+			this.data.append(data);
+			this.snapshot = null;
+			this.markDirty();
+		});
 	}
 
 	/**
@@ -115,21 +350,74 @@ public class PlainFile extends BaseFile {
 	 */
 	@Override
 	public void clear() {
-		data = "";
+		this.markLoaded();
+		this.change(() -> {
+			data.setLength(0);
+			snapshot = "";
+			this.markDirty();
+		});
+	}
+
+	/**
+	 * Copies the data to the writer in small chunks so the whole data is never
+	 * duplicated in memory
+	 * 
+	 * @param writer to write the data to
+	 * 
+	 * @throws IOException if the writer fails
+	 */
+	private void write(final Writer writer) throws IOException {
+		final char[] chunk = new char[WRITE_CHUNK];
+		final int length = data.length();
+		for (int start = 0; start < length; start += WRITE_CHUNK) {
+			final int end = Math.min(length, start + WRITE_CHUNK);
+			data.getChars(start, end, chunk, 0);
+			writer.write(chunk, 0, end - start);
+		}
+	}
+
+	/**
+	 * Writes the data to the file, blocking the changes of concurrent files while
+	 * it is written
+	 */
+	private void write(final boolean buffered) throws IOException {
+		final long stamp = lock == null ? 0 : lock.share();
+		try {
+			if (lock != null)
+				saving = lock.version();
+			final Writer out = new OutputStreamWriter(new FileOutputStream(this.saveTarget()), charset);
+			try (Writer writer = buffered ? new BufferedWriter(out) : out) {
+				this.write(writer);
+			}
+		} finally {
+			if (lock != null)
+				lock.unshare(stamp);
+		}
+	}
+
+	@Override
+	void saved() {
+		super.saved();
+		// The changes done after the data was written are not saved
+		if (lock != null && lock.version() != saving)
+			this.markDirty();
+	}
+
+	@Override
+	void reloaded() {
+		// The changes done after the data were replaced are not on the file
+		if (lock != null && lock.version() != saving)
+			this.markDirty();
 	}
 
 	@Override
 	protected final void buffersave() throws IOException {
-		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-		writer.write(data);
-		writer.close();
+		this.write(true);
 	}
 
 	@Override
 	protected final void writersave() throws IOException {
-		FileWriter writer = new FileWriter(file);
-		writer.write(data);
-		writer.close();
+		this.write(false);
 	}
 
 }
@@ -0,0 +1,137 @@
+package me.ansuz.amrv.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The hash table of disk maps, growing and rebuilding it and comparing it with
+ * other maps
+ *
+ * @author Ansuz
+ *
+ */
+public class DiskMapTest {
+
+	private File directory;
+	private File source;
+	private DiskMap map;
+
+	@Before
+	public void setUp() throws IOException {
+		FileManager.setDebugEnabled(false);
+		directory = Files.createTempDirectory("diskmap").toFile();
+		source = new File(directory, "map.cfg");
+		source.createNewFile();
+		map = new DiskMap(source);
+		map.clear();
+	}
+
+	@After
+	public void tearDown() {
+		for (File child : directory.listFiles())
+			child.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void holdsTheSameEntriesAsAHashMap() {
+		final Map<String, String> expected = new HashMap<String, String>();
+		final Random random = new Random(20);
+		// Enough keys to grow the table a few times and leave tombstones
+		for (int i = 0; i < 20000; i++) {
+			final String key = "key" + random.nextInt(8000);
+			if (random.nextInt(3) == 0)
+				assertEquals(expected.remove(key), map.remove(key));
+			else
+				assertEquals(expected.put(key, "value" + i), map.put(key, "value" + i));
+		}
+
+		assertEquals(expected.size(), map.size());
+		assertEquals(expected, map);
+		assertEquals(map, expected);
+		assertEquals(expected.hashCode(), map.hashCode());
+		for (String key : expected.keySet())
+			assertEquals(expected.get(key), map.get(key));
+		// Nothing is left from the rebuilds
+		assertEquals(2, directory.list().length);
+	}
+
+	@Test
+	public void entriesEqualTheEntriesOfOtherMaps() {
+		map.put("key", "value");
+		final Entry<String, String> entry = map.entrySet().iterator().next();
+		final Entry<String, String> other = new SimpleEntry<String, String>("key", "value");
+
+		assertEquals(other, entry);
+		assertEquals(entry, other);
+		assertEquals(other.hashCode(), entry.hashCode());
+		assertEquals("key=value", entry.toString());
+	}
+
+	@Test
+	public void opensTheTableSavedForTheSameSource() throws IOException {
+		for (int i = 0; i < 3000; i++)
+			map.put("key" + i, "value" + i);
+		map.saved(source);
+
+		final DiskMap reopened = new DiskMap(source);
+		assertTrue(reopened.open(source));
+		assertEquals(map, reopened);
+	}
+
+	@Test
+	public void doesNotOpenATableBiggerThanTheMaximum() throws Exception {
+		final ByteBuffer header = ByteBuffer.allocate(constant("HEADER"));
+		header.putInt(0, constant("MAGIC")).putInt(4, constant("VERSION")).putInt(constant("CAPACITY"),
+				constant("MAXIMUM_CAPACITY") * 2);
+		Files.write(map.file().toPath(), header.array());
+
+		assertFalse(new DiskMap(source).open(source));
+	}
+
+	@Test
+	public void doesNotGrowPastTheMaximumCapacity() throws Exception {
+		map.put("key", "value");
+		// Filling the table up to the maximum would take gigabytes, so the
+		// rebuild that would grow past it is called directly
+		final Method rebuild = DiskMap.class.getDeclaredMethod("rebuild", int.class);
+		rebuild.setAccessible(true);
+		try {
+			rebuild.invoke(map, constant("MAXIMUM_CAPACITY") * 2);
+			fail("The table grew past the maximum capacity");
+		} catch (InvocationTargetException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+		// The table is still usable
+		assertEquals("value", map.get("key"));
+		map.put("other", "value");
+		assertEquals(2, map.size());
+	}
+
+	private static int constant(String name) throws ReflectiveOperationException {
+		final Field field = DiskMap.class.getDeclaredField(name);
+		field.setAccessible(true);
+		return field.getInt(null);
+	}
+
+}
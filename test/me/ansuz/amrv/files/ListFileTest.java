@@ -0,0 +1,107 @@
+package me.ansuz.amrv.files;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.ansuz.amrv.files.FileMetrics.Operation;
+
+/**
+ * Saving list files that only had lines added, which appends them to the file
+ * unless the file changed since it was loaded
+ *
+ * @author Ansuz
+ *
+ */
+public class ListFileTest {
+
+	private File directory;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		FileManager.setDebugEnabled(false);
+		directory = Files.createTempDirectory("listfile").toFile();
+		file = new File(directory, "list.txt");
+		write("aa\nbb\ncc\n");
+	}
+
+	@After
+	public void tearDown() {
+		FileManager.setMetricsEnabled(false);
+		for (File child : directory.listFiles())
+			child.delete();
+		directory.delete();
+	}
+
+	private void write(String text) throws IOException {
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String read() throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void appendsOnlyTheNewLines() throws IOException {
+		FileManager.setMetricsEnabled(true);
+		final ListFile list = FileManager.construct(file).toListFile();
+		list.addnewLine("dd");
+		list.save();
+		final long saved = FileManager.getMetrics().getBytes(ListFile.class, Operation.SAVE);
+		list.addnewLine("ee");
+		list.save();
+
+		assertEquals("aa\nbb\ncc\ndd\nee\n", read());
+		assertEquals("ee\n".length(),
+				FileManager.getMetrics().getBytes(ListFile.class, Operation.SAVE) - saved);
+	}
+
+	@Test
+	public void rewritesAfterAnExternalEditOfTheSameLength() throws IOException {
+		final ListFile list = FileManager.construct(file).toListFile();
+		list.addnewLine("dd");
+		list.save();
+		final long modified = file.lastModified();
+		// Same length as the saved file, only the time tells it changed
+		write("ww\nxx\nyy\nzz\n");
+		file.setLastModified(modified + 2000);
+		list.addnewLine("ee");
+		list.save();
+
+		assertEquals("aa\nbb\ncc\ndd\nee\n", read());
+	}
+
+	@Test
+	public void rewritesAfterAnExternalEditKeepingTheTime() throws IOException {
+		final ListFile list = FileManager.construct(file).toListFile();
+		list.setContentCheckEnabled(true);
+		list.forceReload();
+		final long modified = file.lastModified();
+		// Nothing but the contents tell it changed
+		write("xx\nyy\nzz\n");
+		file.setLastModified(modified);
+		list.addnewLine("dd");
+		list.save();
+
+		assertEquals("aa\nbb\ncc\ndd\n", read());
+	}
+
+	@Test
+	public void appendsToAFileWithoutTheLastLineBreak() throws IOException {
+		write("aa\nbb");
+		final ListFile list = FileManager.construct(file).toListFile();
+		list.addnewLine("cc");
+		list.save();
+
+		assertEquals("aa\nbb\ncc\n", read());
+	}
+
+}
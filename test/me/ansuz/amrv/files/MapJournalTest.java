@@ -0,0 +1,139 @@
+package me.ansuz.amrv.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Replaying and trimming the log of changes of map files, including frames
+ * that were not completely written
+ *
+ * @author Ansuz
+ *
+ */
+public class MapJournalTest {
+
+	private File directory;
+	private File file;
+	private MapJournal journal;
+
+	@Before
+	public void setUp() throws IOException {
+		FileManager.setDebugEnabled(false);
+		directory = Files.createTempDirectory("mapjournal").toFile();
+		file = new File(directory, "map.cfg");
+		journal = new MapJournal(file);
+	}
+
+	@After
+	public void tearDown() {
+		for (File child : directory.listFiles())
+			child.delete();
+		directory.delete();
+	}
+
+	private long append(String... changes) throws IOException {
+		for (int i = 0; i < changes.length; i += 2)
+			journal.put(changes[i], changes[i + 1]);
+		return journal.append(journal.drain());
+	}
+
+	private Map<String, String> replay() throws IOException {
+		final Map<String, String> values = new HashMap<String, String>();
+		new MapJournal(file).replay(values);
+		return values;
+	}
+
+	private static Map<String, String> map(String... entries) {
+		final Map<String, String> map = new HashMap<String, String>();
+		for (int i = 0; i < entries.length; i += 2)
+			map.put(entries[i], entries[i + 1]);
+		return map;
+	}
+
+	@Test
+	public void replaysEveryFrameInOrder() throws IOException {
+		append("a", "1", "b", "2");
+		append("a", "3");
+		journal.clear();
+		journal.put("c", "4");
+		journal.append(journal.drain());
+		append("d", "5");
+
+		assertEquals(map("c", "4", "d", "5"), replay());
+	}
+
+	@Test
+	public void ignoresATornFrame() throws IOException {
+		final long first = append("a", "1");
+		append("b", "2", "c", "3");
+		try (RandomAccessFile log = new RandomAccessFile(journal.file(), "rw")) {
+			log.setLength(log.length() - 3);
+		}
+
+		final MapJournal reopened = new MapJournal(file);
+		final Map<String, String> values = new HashMap<String, String>();
+		reopened.replay(values);
+		assertEquals(map("a", "1"), values);
+		assertEquals(first, reopened.length());
+
+		// The next frame is written over the torn one
+		reopened.put("d", "4");
+		reopened.append(reopened.drain());
+		assertEquals(map("a", "1", "d", "4"), replay());
+	}
+
+	@Test
+	public void ignoresAFrameThatDoesNotMatchItsChecksum() throws IOException {
+		final long first = append("a", "1");
+		append("b", "2");
+		try (RandomAccessFile log = new RandomAccessFile(journal.file(), "rw")) {
+			log.seek(log.length() - 1);
+			log.write('3');
+		}
+
+		assertEquals(map("a", "1"), replay());
+		assertTrue(journal.file().length() > first);
+	}
+
+	@Test
+	public void trimsTheFramesAlreadyOnTheFile() throws IOException {
+		final long first = append("a", "1");
+		final long second = append("b", "2");
+		journal.trim(first);
+
+		assertEquals(second, journal.length());
+		assertEquals(second, journal.file().length());
+		assertEquals(map("b", "2"), replay());
+
+		// Appending after trimming keeps the remaining frames
+		append("c", "3");
+		assertEquals(map("b", "2", "c", "3"), replay());
+	}
+
+	@Test
+	public void savedChangesAreReadBackFromTheLog() throws IOException {
+		final MapFile map = FileManager.construct(file).toMapFile(MapFile.Option.JOURNALED);
+		map.put("a", "1");
+		map.put("b", "2");
+		map.save();
+		map.put("a", "3");
+		map.save();
+		assertTrue(journal.file().length() > 0);
+
+		map.forceReload();
+		assertEquals("3", map.get("a"));
+		assertEquals("2", map.get("b"));
+	}
+
+}
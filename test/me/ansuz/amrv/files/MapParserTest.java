@@ -0,0 +1,96 @@
+package me.ansuz.amrv.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Parsing big map files in chunks gives the same entries as parsing them line
+ * by line, with the last value of a repeated key winning
+ *
+ * @author Ansuz
+ *
+ */
+public class MapParserTest {
+
+	// Several times the smallest chunk, so the file is split in many chunks
+	private static final int LINES = 400000;
+	private static final int KEYS = 5000;
+
+	private File directory;
+	private File file;
+	private Map<String, String> expected;
+
+	@Before
+	public void setUp() throws IOException {
+		FileManager.setDebugEnabled(false);
+		directory = Files.createTempDirectory("mapparser").toFile();
+		file = new File(directory, "map.cfg");
+		expected = new HashMap<String, String>();
+		try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			for (int i = 0; i < LINES; i++) {
+				// Every key is repeated on every chunk
+				final String key = "key." + (i % KEYS);
+				final String value = "v\u00e4lue " + i;
+				if (i % 7 == 0)
+					out.write("# " + key + "=ignored");
+				else if (i % 11 == 0)
+					out.write("  " + key + " =\t" + value + " ");
+				else
+					out.write(key + "=" + value);
+				if (i % 7 != 0)
+					expected.put(key, value);
+				out.write(i % 3 == 0 ? "\r\n" : "\n");
+			}
+			// The last line has no line break
+			out.write("last=value");
+			expected.put("last", "value");
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (File child : directory.listFiles())
+			child.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void parsesTheChunksInOrder() throws IOException {
+		assertTrue(file.length() > 8 * MapParser.MINIMUM_LENGTH);
+		final Map<String, String> values = new HashMap<String, String>();
+		MapParser.parse(file, StandardCharsets.UTF_8, values, true);
+		assertEquals(expected, values);
+	}
+
+	@Test
+	public void parsesTheSameOnASingleThread() throws IOException {
+		final Map<String, String> values = new HashMap<String, String>();
+		MapParser.parse(file, StandardCharsets.UTF_8, values, false);
+		assertEquals(expected, values);
+	}
+
+	@Test
+	public void mapFilesGetTheSameEntries() {
+		final MapFile map = FileManager.construct(file).toMapFile();
+		// Map files are read with the default charset
+		final Charset charset = Charset.defaultCharset();
+		assertEquals(expected.size(), map.getEntrySet().size());
+		for (Map.Entry<String, String> entry : expected.entrySet())
+			assertEquals(new String(entry.getValue().getBytes(StandardCharsets.UTF_8), charset),
+					map.get(entry.getKey()));
+	}
+
+}
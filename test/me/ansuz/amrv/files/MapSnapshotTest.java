@@ -0,0 +1,116 @@
+package me.ansuz.amrv.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Snapshots of map files are only read while the file they were written from
+ * has not changed
+ *
+ * @author Ansuz
+ *
+ */
+public class MapSnapshotTest {
+
+	private File directory;
+	private File file;
+	private File snapshot;
+	private Map<String, String> values;
+
+	@Before
+	public void setUp() throws IOException {
+		FileManager.setDebugEnabled(false);
+		directory = Files.createTempDirectory("mapsnapshot").toFile();
+		file = new File(directory, "map.cfg");
+		snapshot = MapSnapshot.of(file);
+		write(file, "a=1\nb=2\n");
+		values = new HashMap<String, String>();
+		values.put("a", "1");
+		values.put("b", "2");
+		MapSnapshot.write(snapshot, file, values);
+	}
+
+	@After
+	public void tearDown() {
+		for (File child : directory.listFiles())
+			child.delete();
+		directory.delete();
+	}
+
+	private static void write(File target, String text) throws IOException {
+		Files.write(target.toPath(), text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void readsTheEntriesOfAnUnchangedFile() {
+		final Map<String, String> read = new HashMap<String, String>();
+		assertTrue(MapSnapshot.read(snapshot, file, read));
+		assertEquals(values, read);
+	}
+
+	@Test
+	public void isIgnoredAfterTheFileChanges() throws IOException {
+		write(file, "a=1\nb=2\nc=3\n");
+		final Map<String, String> read = new HashMap<String, String>();
+		assertFalse(MapSnapshot.read(snapshot, file, read));
+		assertTrue(read.isEmpty());
+	}
+
+	@Test
+	public void isIgnoredAfterAnEditOfTheSameSize() throws IOException {
+		final long modified = file.lastModified();
+		write(file, "a=3\nb=4\n");
+		file.setLastModified(modified + 2000);
+		assertFalse(MapSnapshot.read(snapshot, file, new HashMap<String, String>()));
+	}
+
+	@Test
+	public void isIgnoredForAnotherFile() throws IOException {
+		final File other = new File(directory, "other.cfg");
+		write(other, "a=1\nb=2\n");
+		// Same time and size, only the identity of the file is different
+		file.setLastModified(file.lastModified() / 1000 * 1000);
+		other.setLastModified(file.lastModified());
+		MapSnapshot.write(snapshot, file, values);
+		assertFalse(MapSnapshot.read(snapshot, other, new HashMap<String, String>()));
+	}
+
+	@Test
+	public void isIgnoredWhenBroken() throws IOException {
+		try (RandomAccessFile broken = new RandomAccessFile(snapshot, "rw")) {
+			broken.setLength(broken.length() - 1);
+		}
+		final Map<String, String> read = new HashMap<String, String>();
+		assertFalse(MapSnapshot.read(snapshot, file, read));
+		assertTrue(read.isEmpty());
+	}
+
+	@Test
+	public void mapFilesParseTheTextOnceItChanges() throws IOException {
+		final MapFile map = FileManager.construct(file).toMapFile(MapFile.Option.SNAPSHOT);
+		map.put("c", "3");
+		map.save();
+		assertTrue(snapshot.isFile());
+
+		final long modified = file.lastModified();
+		write(file, "a=9\nb=2\nc=3\n");
+		file.setLastModified(modified + 2000);
+		map.forceReload();
+		assertEquals("9", map.get("a"));
+		assertEquals("3", map.get("c"));
+	}
+
+}